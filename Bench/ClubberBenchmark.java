@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Times the hot paths of the program on synthetic databases from
+ * {@link SyntheticClubbers}, of 10,000, 100,000 and 1,000,000 clubbers by
+ * default:
+ * <ul>
+ * <li>save - writing the DB file, as {@code writeClubbersDBtoFile} does through
+ * {@link ClubberStore#writeTo}</li>
+ * <li>load - opening the DB file, as {@code loadClubbersDBFromFile} does
+ * through {@link ClubberStore#open}, and the first lookup after it</li>
+ * <li>find - looking clubbers up by ID, by student ID or personal number, and
+ * keys that don't exist, as {@code NightClubMgmtApp.find} does</li>
+ * <li>isExist - the check the editors make before a commit: a lookup and a
+ * comparison of the record's number</li>
+ * <li>validate - the checks of {@code validateData}, over every identifier of a
+ * record</li>
+ * <li>match - {@link ClubberRecord#match} of a record with its own and with
+ * other keys</li>
+ * </ul>
+ * Each measurement is run to warm up first, then timed over several rounds;
+ * the best round is printed.
+ * 
+ * Run it from the repository root with:
+ * 
+ * <pre>
+ * javac -d out Src/*.java Bench/*.java
+ * java -Xmx2g -cp out ClubberBenchmark [count...]
+ * </pre>
+ */
+public class ClubberBenchmark {
+    private static final int WARMUP_ROUNDS = 3, ROUNDS = 5, OPS_PER_ROUND = 1_000_000;
+
+    // keeps the results alive so the work isn't optimized away
+    private static long sink;
+
+    /**
+     * A piece of work to time.
+     */
+    private interface Round {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args the sizes of the databases, optional
+     * @throws IOException if a DB file can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int[] counts = { 10_000, 100_000, 1_000_000 };
+        if (args.length > 0)
+            counts = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.printf("%-10s %-26s %14s%n", "clubbers", "benchmark", "time");
+        for (int count : counts) {
+            run(count);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static void run(int count) throws IOException {
+        ArrayList<ClubberRecord> records = SyntheticClubbers.generate(count, 42);
+        Path file = Files.createTempFile("clubbers", ".dat");
+        try {
+            ClubberStore written = new ClubberStore();
+            for (ClubberRecord record : records) {
+                written.add(record);
+            }
+            print(count, "save", millis(() -> written.writeTo(file)), "ms");
+            print(count, "load", millis(() -> sink += ClubberStore.open(file).size()), "ms");
+            print(count, "load + first find", millis(() -> sink += ClubberStore.open(file).find(records.get(0).get(0))
+                    .getOrdinal()), "ms");
+
+            ClubberStore store = ClubberStore.open(file);
+            String[] ids = new String[OPS_PER_ROUND];
+            String[] otherKeys = new String[OPS_PER_ROUND];
+            String[] missing = new String[OPS_PER_ROUND];
+            Random random = new Random(7);
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                ClubberRecord record = records.get(random.nextInt(count));
+                String[] keys = record.keys();
+                ids[i] = keys[0];
+                otherKeys[i] = keys[keys.length - 1];
+                // IDs after the last clubber are valid but never generated
+                missing[i] = SyntheticClubbers.id(count + random.nextInt(count));
+            }
+
+            print(count, "find by ID", nanos(() -> {
+                for (String id : ids) {
+                    sink += store.find(id).getOrdinal();
+                }
+            }), "ns/op");
+            print(count, "find by other key", nanos(() -> {
+                for (String key : otherKeys) {
+                    sink += store.find(key).getOrdinal();
+                }
+            }), "ns/op");
+            print(count, "find missing", nanos(() -> {
+                for (String id : missing) {
+                    if (store.find(id) == null)
+                        sink++;
+                }
+            }), "ns/op");
+
+            ClubberRecord editing = store.get(0);
+            print(count, "isExist", nanos(() -> {
+                for (String id : ids) {
+                    ClubberRecord found = store.find(id);
+                    if (found != null && found.getOrdinal() != editing.getOrdinal())
+                        sink++;
+                }
+            }), "ns/op");
+
+            ClubberRecord[] sample = new ClubberRecord[OPS_PER_ROUND];
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                sample[i] = records.get(random.nextInt(count));
+            }
+            print(count, "validate record", nanos(() -> {
+                for (ClubberRecord record : sample) {
+                    sink += FieldValidators.firstInvalid(record);
+                }
+            }), "ns/op");
+            print(count, "match own key", nanos(() -> {
+                for (int i = 0; i < OPS_PER_ROUND; i++) {
+                    if (sample[i].match(sample[i].get(0)))
+                        sink++;
+                }
+            }), "ns/op");
+            print(count, "match other key", nanos(() -> {
+                for (int i = 0; i < OPS_PER_ROUND; i++) {
+                    if (sample[i].match(otherKeys[i]))
+                        sink++;
+                }
+            }), "ns/op");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void print(int count, String name, double time, String unit) {
+        System.out.printf("%-10d %-26s %11.1f %s%n", count, name, time, unit);
+    }
+
+    /**
+     * @return the best time of a round, in milliseconds
+     */
+    private static double millis(Round round) throws IOException {
+        return best(round) / 1e6;
+    }
+
+    /**
+     * @return the best time of a round divided by {@link #OPS_PER_ROUND}, in
+     *         nanoseconds
+     */
+    private static double nanos(Round round) throws IOException {
+        return best(round) / (double) OPS_PER_ROUND;
+    }
+
+    /**
+     * Runs a round to warm up, then times it.
+     * 
+     * @return the best time of the timed rounds, in nanoseconds
+     */
+    private static long best(Round round) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Runs a {@link ClubberServer} on localhost over an in-memory store and hits
+ * it with many simulated door terminals, each a {@link ClubberClient} on its
+ * own thread. It first has every client race to register the same clubbers,
+ * which must each be added exactly once, and then times random lookups by ID
+ * and prints the throughput.
+ * 
+ * Run it from the repository root with:
+ * 
+ * <pre>
+ * javac -d out Src/*.java Bench/*.java
+ * java -cp out ServerBenchmark [clients] [clubbers] [seconds]
+ * </pre>
+ */
+public class ServerBenchmark {
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args the number of clients, clubbers in the store and seconds of
+     *             lookups, all optional
+     * @throws Exception if the server or a client fails
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ClubberStore store = new ClubberStore();
+        for (int i = 0; i < count; i++) {
+            store.add(person(i));
+        }
+
+        try (ClubberServer server = new ClubberServer(store, 0)) {
+            server.start();
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            ArrayList<ClubberClient> connections = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                connections.add(new ClubberClient("localhost", server.getPort()));
+            }
+
+            // every client registers the same new clubbers, only one may win each
+            int racing = 1000;
+            AtomicInteger added = new AtomicInteger();
+            ArrayList<Future<?>> tasks = new ArrayList<>();
+            for (ClubberClient client : connections) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = count; i < count + racing; i++) {
+                        if (client.add(person(i)) == null)
+                            added.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            System.out.printf("%d clients registering %d clubbers: %d added, store holds %d%n", clients, racing,
+                    added.get(), store.size());
+
+            // random lookups until the time is up
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            AtomicLong lookups = new AtomicLong();
+            AtomicLong misses = new AtomicLong();
+            tasks.clear();
+            for (ClubberClient client : connections) {
+                tasks.add(pool.submit(() -> {
+                    Random random = new Random();
+                    long done = 0;
+                    while (System.nanoTime() < end) {
+                        if (client.find(id(random.nextInt(count))) == null)
+                            misses.incrementAndGet();
+                        done++;
+                    }
+                    lookups.addAndGet(done);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            System.out.printf("%d clients: %,d lookups in %d s, %,d lookups/s, %d misses%n", clients, lookups.get(),
+                    seconds, lookups.get() / seconds, misses.get());
+
+            for (ClubberClient client : connections) {
+                client.close();
+            }
+            pool.shutdown();
+        }
+    }
+
+    private static ClubberRecord person(int i) {
+        return new ClubberRecord(ClubberRecord.PERSON, id(i), "Dana", "Cohen", "+(972)54-1234567");
+    }
+
+    /**
+     * Returns the i-th valid ID.
+     */
+    private static String id(int i) {
+        return String.format("%d-%07d|%d", i / 10_000_000 % 10, i % 10_000_000, 1 + i % 9);
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Generates valid clubbers for benchmarks and tests: every identifier passes
+ * its {@link FieldValidators} and no two clubbers share a key. The same seed
+ * always gives the same clubbers.
+ * 
+ * Records cycle through person, student and soldier. Student IDs are keyed by
+ * their number part alone, which has only 90,000 values ({@code [1-9]\d{4}}),
+ * so once {@link #MAX_STUDENTS} students were generated the rest of the
+ * students are generated as persons.
+ * 
+ * Run it from the repository root to write a DB file or a CSV file:
+ * 
+ * <pre>
+ * javac -d out Src/*.java Bench/*.java
+ * java -cp out SyntheticClubbers 100000 BKCustomers.dat
+ * java -cp out SyntheticClubbers 100000 clubbers.csv
+ * </pre>
+ */
+public class SyntheticClubbers {
+    // every number part of a student ID
+    public static final int MAX_STUDENTS = 90_000;
+
+    private static final String[] NAMES = { "Dana", "Noa", "Yael", "Maya", "Tamar", "Avi", "Yossi", "Omer", "Itai",
+            "Eitan", "Shira", "Lior", "Roni", "Gal", "Adi", "Ben", "Sara", "David", "Moshe", "Rachel" };
+    private static final String[] SURNAMES = { "Cohen", "Levi", "Mizrahi", "Peretz", "Biton", "Dahan", "Avraham",
+            "Friedman", "Azulay", "Katz", "O'Neil", "Ben-David", "Bar-On", "Shapiro", "Golan", "MacLeod" };
+    // multipliers that walk every value of a range once, coprime to its size
+    private static final long ID_STEP = 7_654_321, KEY_STEP = 7_919;
+
+    private final Random random;
+    private int count;
+    private int students;
+    private int soldiers;
+
+    /**
+     * @param seed the seed of the random names and phone numbers
+     */
+    public SyntheticClubbers(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Generates the next clubber.
+     * 
+     * @return a valid clubber whose keys differ from all earlier ones
+     */
+    public ClubberRecord next() {
+        int i = count++;
+        String id = id(i);
+        String name = NAMES[random.nextInt(NAMES.length)];
+        String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+        String phone = phone();
+
+        if (i % 3 == 1 && students < MAX_STUDENTS) {
+            String studentId = "" + letter() + letter() + letter() + '/' + (10_000 + students++ * KEY_STEP % 90_000);
+            return new ClubberRecord(ClubberRecord.STUDENT, id, name, surname, phone, studentId);
+        }
+        if (i % 3 == 2) {
+            String personalNum = "ROC".charAt(random.nextInt(3)) + "/" + (1_000_000 + soldiers++ * KEY_STEP % 9_000_000);
+            return new ClubberRecord(ClubberRecord.SOLDIER, id, name, surname, phone, personalNum);
+        }
+        return new ClubberRecord(ClubberRecord.PERSON, id, name, surname, phone);
+    }
+
+    /**
+     * Generates a number of clubbers.
+     * 
+     * @param count the number of clubbers
+     * @param seed  the seed of the random names and phone numbers
+     * @return the clubbers
+     */
+    public static ArrayList<ClubberRecord> generate(int count, long seed) {
+        SyntheticClubbers generator = new SyntheticClubbers(seed);
+        ArrayList<ClubberRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(generator.next());
+        }
+        return records;
+    }
+
+    /**
+     * Returns the ID of the i-th clubber. The first 100,000,000 IDs are all
+     * different, and spread over the whole range rather than counting up.
+     * 
+     * @param i the number of the clubber
+     * @return a valid ID
+     */
+    public static String id(int i) {
+        long n = i * ID_STEP % 100_000_000;
+        return String.format("%d-%07d|%d", n / 10_000_000, n % 10_000_000, 1 + i % 9);
+    }
+
+    private String phone() {
+        return "+(" + (1 + random.nextInt(999)) + ")" + (1 + random.nextInt(99)) + "-"
+                + (1_000_000 + random.nextInt(9_000_000));
+    }
+
+    private char letter() {
+        return (char) ('A' + random.nextInt(26));
+    }
+
+    /**
+     * Writes synthetic clubbers into a DB file, or a CSV file if its name ends
+     * with ".csv".
+     * 
+     * @param args the number of clubbers and the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: SyntheticClubbers count file");
+            return;
+        }
+        int count = Integer.parseInt(args[0]);
+        Path path = Paths.get(args[1]);
+        ArrayList<ClubberRecord> records = generate(count, 42);
+        if (path.toString().endsWith(".csv"))
+            ClubberCsv.exportFile(path, records);
+        else
+            ClubberFileWriter.writeFile(path, records);
+        System.out.println(count + " clubbers written to " + path);
+    }
+}
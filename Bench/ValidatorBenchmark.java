@@ -0,0 +1,84 @@
+/**
+ * Compares the {@link FieldValidators} against the regular expressions the
+ * editor frames used to call through {@link String#matches}. Each identifier is
+ * checked over a mix of valid and invalid values, first to warm up and then
+ * timed, and the average time per check is printed.
+ * 
+ * Run it from the repository root with:
+ * 
+ * <pre>
+ * javac -d out Src/*.java Bench/*.java
+ * java -cp out ValidatorBenchmark
+ * </pre>
+ */
+public class ValidatorBenchmark {
+    private static final int WARMUP_ROUNDS = 5, ROUNDS = 10, CHECKS_PER_ROUND = 1_000_000;
+
+    // the identifiers, their regular expression, validator and sample values
+    private static final String[] NAMES = { "ID", "Name", "Surname", "Tel", "Student ID", "Personal No." };
+    private static final String[] PATTERNS = { "^\\d-\\d{7}\\|[1-9]$", "[A-Z][a-z]+", "([A-Z][a-z]*('|-)?)+",
+            "^\\+\\([1-9]\\d{0,2}\\)[1-9]\\d{0,2}-[1-9]\\d{6}$", "[A-Z]{3}/[1-9]\\d{4}", "[ROC]/[1-9]\\d{6}" };
+    private static final FieldValidators.Validator[] VALIDATORS = { FieldValidators.ID, FieldValidators.NAME,
+            FieldValidators.SURNAME, FieldValidators.PHONE, FieldValidators.STUDENT_ID,
+            FieldValidators.PERSONAL_NUMBER };
+    private static final String[][] VALUES = {
+            { "1-2345678|9", "0-0000000|1", "1-2345678|0", "12345678|9" },
+            { "Dana", "Li", "dana", "D" },
+            { "Cohen", "O'Neil-Smith", "McDonald", "cohen" },
+            { "+(972)54-1234567", "+(1)1-1000000", "+(972)054-1234567", "972-54-1234567" },
+            { "ABC/12345", "XYZ/99999", "ABC/02345", "AB/12345" },
+            { "R/1234567", "C/9999999", "X/1234567", "R/0234567" } };
+
+    // keeps the results alive so the checks aren't optimized away
+    private static int sink;
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args .
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-14s %14s %14s%n", "identifier", "regex ns/op", "scanner ns/op");
+        for (int field = 0; field < NAMES.length; field++) {
+            double regex = measure(field, true);
+            double scanner = measure(field, false);
+            System.out.printf("%-14s %14.1f %14.1f%n", NAMES[field], regex, scanner);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Times the checks of a single identifier.
+     * 
+     * @param field    the identifier's index
+     * @param useRegex true to time {@link String#matches}, false for the validator
+     * @return the average time per check, in nanoseconds, over the timed rounds
+     */
+    private static double measure(int field, boolean useRegex) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(field, useRegex);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            round(field, useRegex);
+        }
+        return (System.nanoTime() - start) / (double) ROUNDS / CHECKS_PER_ROUND;
+    }
+
+    /**
+     * Checks the sample values of an identifier {@link #CHECKS_PER_ROUND} times.
+     */
+    private static void round(int field, boolean useRegex) {
+        String[] values = VALUES[field];
+        int valid = 0;
+        for (int i = 0; i < CHECKS_PER_ROUND; i++) {
+            String value = values[i & 3];
+            if (useRegex ? value.matches(PATTERNS[field])
+                    : VALIDATORS[field].check(value) == FieldValidators.VALID)
+                valid++;
+        }
+        sink += valid;
+    }
+}
@@ -0,0 +1,532 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+
+/**
+ * Records clubbers entering and leaving the club. A clubber is found by any of
+ * their keys, using {@link ClubberRepository#find}, and the event is put in a
+ * ring buffer in memory, so the door never waits for the disk. A background
+ * thread moves the events from the ring buffer to the file of the night every
+ * second, and forces each batch to the disk. A burst the flusher can't keep up
+ * with drops the events that don't fit in the ring from the file, and counts
+ * them, rather than keep the door waiting; the live counters still have them.
+ * 
+ * Live counters are kept with the events: the number of clubbers inside, the
+ * most that were inside at once tonight and the entries of the last minute.
+ * A night starts at noon, so the events after midnight belong to the same
+ * night as the ones before it. When a new night starts the counters are reset.
+ * 
+ * A night file is named "checkins-&lt;date&gt;.dat", after the date the night
+ * started on. It starts with the magic number {@link #MAGIC} and the format
+ * {@link #VERSION} (short), followed by blocks of events, one per flush. Each
+ * block is stored by column: the number of events (int), then the time of every
+ * event (long, milliseconds since the epoch), then the kind of every event
+ * ({@link #ENTRY} or {@link #EXIT}, byte) and then the ID of every clubber as a
+ * length-prefixed (unsigned short) UTF-8 string. All numbers are big-endian.
+ * A block cut short by a crash is cut off the file before the file is appended
+ * to again, so the blocks of a night that was restarted follow the last whole
+ * one.
+ */
+public class CheckInLog implements Closeable {
+    // "BKCI"
+    public static final int MAGIC = 0x424B4349;
+    public static final short VERSION = 1;
+    // kinds of events
+    public static final byte ENTRY = 1, EXIT = 2;
+    // events kept in memory until they are flushed
+    private static final int CAPACITY = 1 << 16;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    // the hour a night starts at
+    private static final int NIGHT_START_HOUR = 12;
+
+    /**
+     * The attendance of a single night, read from its file by
+     * {@link CheckInLog#summarize}.
+     */
+    public static class NightStats {
+        private int entries;
+        private int exits;
+        private int peak;
+        private long busiestMinute;
+        private int busiestMinuteEntries;
+        private final HashSet<String> visitors = new HashSet<>();
+        private final HashSet<String> inside = new HashSet<>();
+
+        /**
+         * @return the number of entries.
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the number of exits.
+         */
+        public int getExits() {
+            return exits;
+        }
+
+        /**
+         * @return the number of different clubbers that entered.
+         */
+        public int getVisitors() {
+            return visitors.size();
+        }
+
+        /**
+         * @return the most clubbers that were inside at once.
+         */
+        public int getPeak() {
+            return peak;
+        }
+
+        /**
+         * @return the start of the minute with the most entries, in milliseconds
+         *         since the epoch.
+         */
+        public long getBusiestMinute() {
+            return busiestMinute;
+        }
+
+        /**
+         * @return the entries of the minute with the most entries.
+         */
+        public int getBusiestMinuteEntries() {
+            return busiestMinuteEntries;
+        }
+
+        /**
+         * @return the IDs of the clubbers that were still inside at the end.
+         */
+        public Set<String> getInside() {
+            return inside;
+        }
+
+        @Override
+        public String toString() {
+            return entries + " entries, " + exits + " exits, " + visitors.size() + " visitors, peak " + peak
+                    + ", busiest minute " + busiestMinuteEntries + " entries";
+        }
+    }
+
+    private final ClubberRepository clubbers;
+    private final Path directory;
+
+    // the ring buffer. events head to tail - 1 are not flushed yet. guarded by this
+    private final long[] times = new long[CAPACITY];
+    private final byte[] kinds = new byte[CAPACITY];
+    private final String[] ids = new String[CAPACITY];
+    private long head;
+    private long tail;
+    // events that didn't fit in the ring, and the ones told about so far
+    private long dropped;
+    private long droppedTold;
+
+    // live counters of the current night, guarded by this
+    private LocalDate night;
+    // numbers of the records of the clubbers inside
+    private final HashSet<Integer> inside = new HashSet<>();
+    private int peak;
+    // entries of each of the last 60 seconds. secondCounts[s % 60] counts second s
+    private final long[] seconds = new long[60];
+    private final int[] secondCounts = new int[60];
+
+    // flushing, used by a single thread at a time
+    private final Object flushLock = new Object();
+    private FileChannel file;
+    private LocalDate fileNight;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * Opens the log and starts flushing it. If tonight's file already exists,
+     * the clubbers inside and the peak are restored from it.
+     * 
+     * @param clubbers  the database the clubbers are found in
+     * @param directory the directory of the night files
+     * @throws IOException if tonight's file can't be read
+     */
+    public CheckInLog(ClubberRepository clubbers, Path directory) throws IOException {
+        this.clubbers = clubbers;
+        this.directory = directory;
+
+        night = nightOf(System.currentTimeMillis());
+        Path tonight = fileOf(night);
+        if (Files.exists(tonight)) {
+            NightStats stats = summarize(tonight);
+            peak = stats.getPeak();
+            for (String id : stats.getInside()) {
+                ClubberRecord clubber = clubbers.find(id);
+                if (clubber != null)
+                    inside.add(clubber.getOrdinal());
+            }
+        }
+
+        flusher = new Thread(this::flushPeriodically, "Check-in flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Records a clubber entering. A clubber that is already inside is not
+     * recorded again.
+     * 
+     * @param key any key of the clubber
+     * @return the clubber, or null if there is no clubber with that key
+     */
+    public ClubberRecord enter(String key) {
+        return record(key, ENTRY);
+    }
+
+    /**
+     * Records a clubber leaving. A clubber that isn't inside is not recorded.
+     * 
+     * @param key any key of the clubber
+     * @return the clubber, or null if there is no clubber with that key
+     */
+    public ClubberRecord leave(String key) {
+        return record(key, EXIT);
+    }
+
+    private ClubberRecord record(String key, byte kind) {
+        ClubberRecord clubber = clubbers.find(key);
+        if (clubber == null)
+            return null;
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            startNight(now);
+            boolean changed = kind == ENTRY ? inside.add(clubber.getOrdinal()) : inside.remove(clubber.getOrdinal());
+            if (!changed)
+                return clubber;
+
+            // only a burst the flusher can't keep up with fills the ring. the
+            // door doesn't wait for it, the event is only counted
+            if (tail - head == CAPACITY) {
+                dropped++;
+                notifyAll();
+            } else {
+                int slot = (int) (tail % CAPACITY);
+                times[slot] = now;
+                kinds[slot] = kind;
+                ids[slot] = clubber.get(0);
+                tail++;
+            }
+
+            if (kind == ENTRY) {
+                peak = Math.max(peak, inside.size());
+                long second = now / 1000;
+                int bucket = (int) (second % 60);
+                if (seconds[bucket] != second) {
+                    seconds[bucket] = second;
+                    secondCounts[bucket] = 0;
+                }
+                secondCounts[bucket]++;
+            }
+        }
+        return clubber;
+    }
+
+    /**
+     * Resets the counters if the given time belongs to a new night.
+     */
+    private void startNight(long now) {
+        LocalDate current = nightOf(now);
+        if (!current.equals(night)) {
+            night = current;
+            inside.clear();
+            peak = 0;
+        }
+    }
+
+    /**
+     * @return the number of clubbers inside.
+     */
+    public synchronized int getOccupancy() {
+        startNight(System.currentTimeMillis());
+        return inside.size();
+    }
+
+    /**
+     * @return the most clubbers that were inside at once tonight.
+     */
+    public synchronized int getPeak() {
+        startNight(System.currentTimeMillis());
+        return peak;
+    }
+
+    /**
+     * @return the number of events that didn't fit in the ring buffer, and
+     *         were left out of the night files.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of entries in the last 60 seconds.
+     */
+    public synchronized int getEntriesLastMinute() {
+        long now = System.currentTimeMillis() / 1000;
+        int count = 0;
+        for (int i = 0; i < seconds.length; i++) {
+            if (seconds[i] > now - 60)
+                count += secondCounts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Flushes the events still in memory, then closes the night file.
+     */
+    @Override
+    public void close() throws IOException {
+        // interrupting the flusher could close the file under it
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (flushLock) {
+            flush();
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+    }
+
+    private void flushPeriodically() {
+        while (!closed) {
+            try {
+                synchronized (this) {
+                    // woken early by a full ring
+                    wait(FLUSH_INTERVAL_MILLIS);
+                }
+                synchronized (flushLock) {
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves the events out of the ring buffer and appends them to the files of
+     * their nights, forced to the disk. Called with the flush lock held.
+     */
+    private void flush() throws IOException {
+        int count;
+        long[] eventTimes;
+        byte[] eventKinds;
+        String[] eventIds;
+        long newlyDropped;
+        synchronized (this) {
+            newlyDropped = dropped - droppedTold;
+            droppedTold = dropped;
+            count = (int) (tail - head);
+            eventTimes = new long[count];
+            eventKinds = new byte[count];
+            eventIds = new String[count];
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((head + i) % CAPACITY);
+                eventTimes[i] = times[slot];
+                eventKinds[i] = kinds[slot];
+                eventIds[i] = ids[slot];
+                ids[slot] = null;
+            }
+            head = tail;
+        }
+
+        // a block never spans two nights
+        int start = 0;
+        while (start < count) {
+            LocalDate blockNight = nightOf(eventTimes[start]);
+            int end = start + 1;
+            while (end < count && nightOf(eventTimes[end]).equals(blockNight)) {
+                end++;
+            }
+            writeBlock(blockNight, eventTimes, eventKinds, eventIds, start, end);
+            start = end;
+        }
+        if (count > 0)
+            file.force(false);
+        if (newlyDropped > 0)
+            System.err.println(newlyDropped + " check-in events didn't fit in memory and were not logged");
+    }
+
+    /**
+     * Appends events start to end - 1 to the file of the given night, column by
+     * column.
+     */
+    private void writeBlock(LocalDate blockNight, long[] eventTimes, byte[] eventKinds, String[] eventIds,
+            int start, int end) throws IOException {
+        if (!blockNight.equals(fileNight)) {
+            if (file != null) {
+                file.force(false);
+                file.close();
+            }
+            Path path = fileOf(blockNight);
+            long length = Files.exists(path) ? completeLength(path) : 0;
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            fileNight = blockNight;
+            // a block cut short by a crash would hide the ones appended after it
+            if (file.size() > length)
+                file.truncate(length);
+            if (length == 0)
+                write(ByteBuffer.allocate(4 + 2).putInt(MAGIC).putShort(VERSION));
+        }
+
+        int count = end - start;
+        byte[][] idBytes = new byte[count][];
+        int size = 4 + count * (8 + 1);
+        for (int i = 0; i < count; i++) {
+            idBytes[i] = eventIds[start + i].getBytes(StandardCharsets.UTF_8);
+            size += 2 + idBytes[i].length;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(size);
+        block.putInt(count);
+        for (int i = start; i < end; i++) {
+            block.putLong(eventTimes[i]);
+        }
+        for (int i = start; i < end; i++) {
+            block.put(eventKinds[i]);
+        }
+        for (byte[] id : idBytes) {
+            block.putShort((short) id.length);
+            block.put(id);
+        }
+        write(block);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a night file and replays its events.
+     * 
+     * @param path the night file
+     * @return the attendance of the night
+     * @throws IOException if the file can't be read or is corrupt
+     */
+    public static NightStats summarize(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < 6 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+            throw new IOException(path + " is not a check-in file");
+
+        NightStats stats = new NightStats();
+        HashMap<Long, Integer> minutes = new HashMap<>();
+        // a block cut short by a crash ends the file
+        for (int end; (end = blockEnd(buffer, buffer.position())) >= 0; buffer.position(end)) {
+            int count = buffer.getInt();
+            long[] eventTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                eventTimes[i] = buffer.getLong();
+            }
+            byte[] eventKinds = new byte[count];
+            buffer.get(eventKinds);
+
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                String id = new String(bytes, StandardCharsets.UTF_8);
+
+                if (eventKinds[i] == ENTRY) {
+                    stats.entries++;
+                    stats.visitors.add(id);
+                    stats.inside.add(id);
+                    stats.peak = Math.max(stats.peak, stats.inside.size());
+                    long minute = eventTimes[i] / 60_000 * 60_000;
+                    int entries = minutes.merge(minute, 1, Integer::sum);
+                    if (entries > stats.busiestMinuteEntries) {
+                        stats.busiestMinuteEntries = entries;
+                        stats.busiestMinute = minute;
+                    }
+                } else {
+                    stats.exits++;
+                    stats.inside.remove(id);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Finds where the whole blocks of a night file end.
+     * 
+     * @param path the night file
+     * @return the length of the file without a block cut short by a crash at its
+     *         end, or 0 if even the header is cut short
+     * @throws IOException if the file can't be read or isn't a night file
+     */
+    private static long completeLength(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < 6)
+            return 0;
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+            throw new IOException(path + " is not a check-in file");
+
+        int position = buffer.position();
+        for (int end; (end = blockEnd(buffer, position)) >= 0;) {
+            position = end;
+        }
+        return position;
+    }
+
+    /**
+     * Finds the end of the block starting at a position, without reading its
+     * events.
+     * 
+     * @return the position after the block, or -1 if the block was cut short
+     */
+    private static int blockEnd(ByteBuffer buffer, int start) {
+        int limit = buffer.limit();
+        if (start + 4 > limit)
+            return -1;
+        int count = buffer.getInt(start);
+        // the times and kinds, before the IDs
+        if (count < 0 || count > (limit - start - 4) / (8 + 1))
+            return -1;
+        int position = start + 4 + count * (8 + 1);
+        for (int i = 0; i < count; i++) {
+            if (position + 2 > limit)
+                return -1;
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+        }
+        return position <= limit ? position : -1;
+    }
+
+    /**
+     * @param night the date the night started on
+     * @return the file of the night
+     */
+    public Path fileOf(LocalDate night) {
+        return directory.resolve("checkins-" + night + ".dat");
+    }
+
+    /**
+     * Returns the night a time belongs to: the date, counting days from noon.
+     */
+    private static LocalDate nightOf(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())
+                .minusHours(NIGHT_START_HOUR).toLocalDate();
+    }
+}
@@ -2,13 +2,20 @@ import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
 import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import javax.swing.text.*;
 
 /**
  * Base abstract class that extends {@link JFrame} responsible to contain and
  * handle the GUI and base behavior of its inheritors.
  * 
+ * The frame holds no clubber data of its own. It is an editor that is bound to
+ * a {@link ClubberRecord} using {@link #bind}, so a single frame per type can be
+ * reused for whichever record is open.
+ * 
  * Defines a number of abstract methods that allow generic handling for the Ok
- * and Cancel buttons.
+ * and Cancel buttons. The data is checked and committed on a background thread,
+ * as the database may be a server's, with both buttons disabled meanwhile.
  */
 public abstract class ClubAbstractEntity extends JFrame {
     // buttons
@@ -17,6 +24,12 @@ public abstract class ClubAbstractEntity extends JFrame {
     private JPanel centerPanel;
     // hidden handler class
     private ButtonsHandler handler;
+    // the record currently bound to the editor
+    protected ClubberRecord record;
+    // reused by textOf to read the textfields without copying their text
+    private final Segment segment = new Segment();
+    // the color of a hidden asterisk
+    private static final Color HIDDEN = new Color(0, 0, 0, 0);
 
     /**
      * Parameterless constructor. Creates and initializes instance variables and all
@@ -58,6 +71,35 @@ public abstract class ClubAbstractEntity extends JFrame {
         setResizable(false);
     }
 
+    /**
+     * Binds the editor to a record and fills the textfields with its committed
+     * data. The record is either in the database, or a new clubber that is only
+     * added once OK is pressed, so cancelling it leaves nothing behind.
+     * 
+     * @param record the record to edit
+     */
+    public void bind(ClubberRecord record) {
+        this.record = record;
+        cancelButton.setEnabled(true);
+        rollBack();
+    }
+
+    /**
+     * Releases the bound record once the editor is closed, so an idle editor
+     * keeps no record alive. The textfields are refilled by the next
+     * {@link #bind}.
+     */
+    public void unbind() {
+        record = null;
+    }
+
+    /**
+     * @return the record currently bound to the editor
+     */
+    public ClubberRecord getRecord() {
+        return record;
+    }
+
     /**
      * Adds a component to the center of the panel. Used as an interface that allows
      * inheritors to communicate with the centerPanel of this class.
@@ -99,47 +141,144 @@ public abstract class ClubAbstractEntity extends JFrame {
     }
 
     /**
-     * This method creates a JLabel with the text " " and dyes it red. When needed
-     * the text will be changed to "*". The blank space is used to "reserve" a place
-     * for the "*"
+     * Returns the text of a textfield without copying it, for validation. The
+     * returned sequence is only valid until the next call.
      * 
+     * @param textfield the textfield to read
+     * @return the textfield's text
+     */
+    protected CharSequence textOf(JTextField textfield) {
+        Document document = textfield.getDocument();
+        try {
+            document.getText(0, document.getLength(), segment);
+            return segment;
+        } catch (BadLocationException e) {
+            return textfield.getText();
+        }
+    }
+
+    /**
+     * This method creates a JLabel holding a "*", hidden by being transparent.
+     * {@link #markAsterisk} dyes it red when needed. Since its text never
+     * changes, showing or hiding it only repaints the label, and the row it is
+     * in isn't laid out again.
      * 
      * @return the created JLabel.
      */
     protected JLabel createAsterisk() {
-        JLabel asterisk = new JLabel(" ");
-        asterisk.setForeground(Color.red);
+        JLabel asterisk = new JLabel("*");
+        asterisk.setForeground(HIDDEN);
         return asterisk;
     }
 
     /**
-     * An abstract method to define a "matching" interface.
+     * Shows or hides an asterisk created by {@link #createAsterisk}.
      * 
-     * @param key The key to search for in the database.
-     * @return true or false, depending if the key was found in the database.
+     * @param asterisk the asterisk
+     * @param shown    true to show it, false to hide it
      */
-    public abstract boolean match(String key);
+    protected void markAsterisk(JLabel asterisk, boolean shown) {
+        asterisk.setForeground(shown ? Color.red : HIDDEN);
+    }
 
     /**
-     * An abstract method to define a validation interface.
+     * An abstract method to define a validation interface. Called on a
+     * background thread, so it only looks at the given record.
      * 
-     * @return true if all the text fields are valid, false otherwise.
+     * @param edited a copy of the bound record holding the typed data, see
+     *               {@link #commit}
+     * @return the result of the validation
      */
+    protected abstract ClubberValidation validateData(ClubberRecord edited);
 
-    protected abstract boolean validateData();
+    /**
+     * Shows the result of {@link #validateData} on the form, and tells the user
+     * about a problem that needs more than a mark.
+     * 
+     * @param result the result of the validation
+     * @return true if the data may be committed, false otherwise.
+     */
+    protected abstract boolean accept(ClubberValidation result);
 
     /**
      * An abstract method that saves the JTextfields' data of the inheritors into
-     * their matching strings, respectively.
+     * the matching identifiers of the given record, respectively.
+     * 
+     * @param target a copy of the bound record, committed into it by the store
      */
-    protected abstract void commit();
+    protected abstract void commit(ClubberRecord target);
 
     /**
-     * An abstract method that copies the "saved" data from the inheritors to their
-     * matching JTextfields, respectively.
+     * An abstract method that copies the "saved" data from the bound record to the
+     * matching JTextfields of the inheritors, respectively.
      */
     protected abstract void rollBack();
 
+    /**
+     * Runs {@link #validateData} and records how long it took in
+     * {@link ClubberMetrics#VALIDATE}.
+     * 
+     * @return the result of {@link #validateData}
+     */
+    private ClubberValidation timedValidateData(ClubberRecord edited) {
+        long start = System.nanoTime();
+        ClubberValidation result = validateData(edited);
+        ClubberMetrics.VALIDATE.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Validates the typed data and commits it into the bound record on a
+     * background thread, using {@link NightClubMgmtApp#commit}, then hides the
+     * editor if it was committed. Another terminal may have taken a key since
+     * the data was validated, then the editor stays open and the user is told.
+     */
+    private void validateAndCommit() {
+        // commit into a copy, which the store checks and copies into the record
+        // in one step
+        ClubberRecord bound = record;
+        ClubberRecord edited = bound.copy();
+        commit(edited);
+        okButton.setEnabled(false);
+        cancelButton.setEnabled(false);
+
+        new SwingWorker<ClubberRecord, Void>() {
+            private ClubberValidation result;
+
+            @Override
+            protected ClubberRecord doInBackground() {
+                result = timedValidateData(edited);
+                return result.isValid() ? NightClubMgmtApp.commit(bound, edited) : null;
+            }
+
+            @Override
+            protected void done() {
+                okButton.setEnabled(true);
+                cancelButton.setEnabled(true);
+                ClubberRecord holder;
+                try {
+                    holder = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(ClubAbstractEntity.this, "Commit failed: " + cause.getMessage(),
+                            "Commit Failed", JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                    return;
+                }
+                if (!accept(result))
+                    return;
+
+                if (holder != null) {
+                    String str = "Clubber " + holder.get(0) + " already holds one of these keys";
+                    JOptionPane.showMessageDialog(ClubAbstractEntity.this, str, "Clubber Already In Data Base",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                setVisible(false);
+            }
+        }.execute();
+    }
+
     /**
      * Tends to events generated from {@link javax.swing.JButton} okButton and
      * cancelButton of outer class.
@@ -153,13 +292,12 @@ public abstract class ClubAbstractEntity extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             // if ok button was pressed, validate data, and if data is valid commit
-            if ((e.getSource() == okButton) && validateData()) {
-                commit();
-                cancelButton.setEnabled(true);
-                setVisible(false);
-            }
+            if (e.getSource() == okButton)
+                validateAndCommit();
 
-            // if cancel button was pressed, rollback
+            // if cancel button was pressed, rollback. the record is left
+            // untouched, so the key index stays in sync, and a new clubber is
+            // dropped without being added
             if (e.getSource() == cancelButton) {
                 rollBack();
                 setVisible(false);
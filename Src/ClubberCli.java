@@ -0,0 +1,299 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Command line access to the clubbers database, for batch lookups and imports
+ * and for running the server, without a display. It uses
+ * {@link ClubberDatabase} alone and never loads AWT or Swing, so it starts as
+ * fast as the DB file can be mapped.
+ * 
+ * Run it from the directory of the DB file with:
+ * 
+ * <pre>
+ * java -cp out ClubberCli [--db file] command [args]
+ * </pre>
+ * 
+ * Clubbers are printed as rows of {@link ClubberCsv}. The exit status is 0 on
+ * success, 1 if a key wasn't found or a clubber was rejected, and 2 on a usage
+ * or I/O error.
+ */
+public final class ClubberCli {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: ClubberCli [--db file] command [args]",
+            "  count                    prints the number of clubbers",
+            "  find key...              prints the clubbers with any of the keys, \"-\" reads keys from stdin",
+            "  add type id name surname tel [student_id_or_personal_no]",
+            "                           validates and adds a clubber",
+            "  import file.csv          adds the clubbers of a CSV file",
+            "  export file.csv          writes every clubber to a CSV file",
+            "  check                    reports invalid identifiers and keys held by two clubbers",
+            "  purge [--dedupe]         removes blank clubbers and ones with invalid identifiers,",
+            "                           and with --dedupe ones holding a key of an earlier clubber",
+            "  serve [port]             serves the database to other terminals until stopped,",
+            "                           with metrics over JMX and in " + ClubberMetrics.DEFAULT_DUMP_FILE);
+
+    private ClubberCli() {
+    }
+
+    /**
+     * Runs a command.
+     * 
+     * @param args the options and the command
+     */
+    public static void main(String[] args) {
+        Path file = ClubberDatabase.DEFAULT_FILE;
+        int arg = 0;
+        if (args.length >= 2 && args[0].equals("--db")) {
+            file = Paths.get(args[1]);
+            arg = 2;
+        }
+        if (arg >= args.length) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        String command = args[arg];
+        String[] params = Arrays.copyOfRange(args, arg + 1, args.length);
+        if (command.equals("serve")) {
+            serve(file, params);
+            return;
+        }
+
+        int status;
+        try (ClubberDatabase database = ClubberDatabase.open(file)) {
+            switch (command) {
+                case "count":
+                    System.out.println(database.size());
+                    status = 0;
+                    break;
+                case "find":
+                    status = find(database, params);
+                    break;
+                case "add":
+                    status = add(database, params);
+                    break;
+                case "import":
+                    status = importCsv(database, params);
+                    break;
+                case "export":
+                    status = exportCsv(database, params);
+                    break;
+                case "check":
+                    status = check(database);
+                    break;
+                case "purge":
+                    status = purge(database, params);
+                    break;
+                default:
+                    System.err.println(USAGE);
+                    status = 2;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println(file + ": " + e.getMessage());
+            status = 2;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Prints the clubbers with the given keys, or with the keys read from the
+     * standard input, one per line, if the only key is "-". Keys that aren't
+     * found are reported on the standard error.
+     */
+    private static int find(ClubberDatabase database, String[] keys) throws IOException {
+        if (keys.length == 0)
+            return usage();
+
+        int status = 0;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if (keys.length == 1 && keys[0].equals("-")) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String key;
+            while ((key = in.readLine()) != null) {
+                key = key.trim();
+                if (!key.isEmpty() && !print(database, key, out))
+                    status = 1;
+            }
+        } else {
+            for (String key : keys) {
+                if (!print(database, key, out))
+                    status = 1;
+            }
+        }
+        out.flush();
+        return status;
+    }
+
+    /**
+     * Prints the clubber with a key.
+     * 
+     * @return false if there is no such clubber
+     */
+    private static boolean print(ClubberDatabase database, String key, Writer out) throws IOException {
+        ClubberRecord clubber = database.find(key);
+        if (clubber == null) {
+            // keep the found rows in order with the message
+            out.flush();
+            System.err.println(key + ": not found");
+            return false;
+        }
+        ClubberCsv.writeRow(out, clubber);
+        out.write(System.lineSeparator());
+        return true;
+    }
+
+    /**
+     * Adds a clubber given by its type name and identifiers, if they are all
+     * valid and none of its keys belongs to another clubber.
+     */
+    private static int add(ClubberDatabase database, String[] row) {
+        int type = row.length > 0 ? ClubberRecord.typeOf(row[0]) : -1;
+        if (type < 0 || row.length - 1 != ClubberRecord.fieldCount(type))
+            return usage();
+
+        ClubberRecord record = new ClubberRecord(type, Arrays.copyOfRange(row, 1, row.length));
+        int field = FieldValidators.firstInvalid(record);
+        if (field != FieldValidators.VALID) {
+            int position = FieldValidators.of(type, field).check(record.get(field));
+            System.err.println(ClubberRecord.fieldName(type, field) + " is invalid at position " + position);
+            return 1;
+        }
+
+        ClubberRecord holder = database.add(record);
+        if (holder != null) {
+            System.err.println("Clubber " + holder.get(0) + " already holds one of these keys");
+            return 1;
+        }
+        System.out.println("Clubber " + record.get(0) + " added");
+        return 0;
+    }
+
+    /**
+     * Imports a CSV file by {@link ClubberCsv#importFile}, printing the report and
+     * the rejected rows.
+     */
+    private static int importCsv(ClubberDatabase database, String[] params) throws IOException {
+        if (params.length != 1)
+            return usage();
+
+        ClubberCsv.ImportReport report = ClubberCsv.importFile(Paths.get(params[0]), database, null);
+        for (String rejected : report.getRejected()) {
+            System.err.println(rejected);
+        }
+        System.out.println(report);
+        return report.getRejected().isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Exports every clubber by {@link ClubberCsv#exportFile}.
+     */
+    private static int exportCsv(ClubberDatabase database, String[] params) throws IOException {
+        if (params.length != 1)
+            return usage();
+
+        int count = ClubberCsv.exportFile(Paths.get(params[0]), database.records());
+        System.out.println(count + " clubbers exported");
+        return 0;
+    }
+
+    /**
+     * Checks every clubber of the database, as the editors check a record before
+     * a commit: every identifier must be valid, and no key may belong to two
+     * clubbers. Databases written by older versions, or merged from journals, may
+     * break either rule.
+     */
+    private static int check(ClubberDatabase database) {
+        int problems = 0;
+        // key -> number of the first clubber holding it
+        ClubberKeyMap holders = new ClubberKeyMap(database.size());
+
+        for (ClubberRecord record : database.records()) {
+            if (record.isBlank())
+                continue;
+
+            int field = FieldValidators.firstInvalid(record);
+            if (field != FieldValidators.VALID) {
+                System.out.println(record.get(0) + ": " + ClubberRecord.fieldName(record.getType(), field)
+                        + " is invalid");
+                problems++;
+            }
+            for (String key : record.keys()) {
+                int holder = holders.putIfAbsent(key, record.getOrdinal());
+                if (holder != ClubberKeyMap.MISSING) {
+                    System.out.println(
+                            record.get(0) + ": " + key + " is also held by " + database.peek(holder).get(0));
+                    problems++;
+                }
+            }
+        }
+        System.out.println(database.size() + " clubbers checked, " + problems + " problems found");
+        return problems == 0 ? 0 : 1;
+    }
+
+    /**
+     * Removes the clubbers {@link #check} would report, by
+     * {@link ClubberDatabase#purge}, and prints what was removed.
+     */
+    private static int purge(ClubberDatabase database, String[] params) throws IOException {
+        boolean dedupe = params.length == 1 && params[0].equals("--dedupe");
+        if (params.length > 1 || (params.length == 1 && !dedupe))
+            return usage();
+
+        ClubberDatabase.PurgeReport report = database.purge(dedupe);
+        for (String removed : report.getRemoved()) {
+            System.out.println(removed);
+        }
+        System.out.println(report);
+        return 0;
+    }
+
+    /**
+     * Serves the database to clients until the program is stopped, then writes
+     * the DB file.
+     */
+    private static void serve(Path file, String[] params) {
+        int port = ClubberProtocol.DEFAULT_PORT;
+        if (params.length > 0) {
+            try {
+                port = Integer.parseInt(params[0]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 65535) {
+                System.err.println("Bad port " + params[0]);
+                System.exit(usage());
+            }
+        }
+        try {
+            ClubberDatabase database = ClubberDatabase.open(file);
+            database.startCompaction();
+            ClubberServer server = new ClubberServer(database, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    database.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                ClubberMetrics.stop(ClubberMetrics.DEFAULT_DUMP_FILE);
+            }, "Clubbers shutdown"));
+            server.start();
+            ClubberMetrics.start(ClubberMetrics.DEFAULT_DUMP_FILE, ClubberMetrics.DEFAULT_DUMP_SECONDS);
+            System.out.println("Serving " + database.size() + " clubbers on port " + server.getPort());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    private static int usage() {
+        System.err.println(USAGE);
+        return 2;
+    }
+}
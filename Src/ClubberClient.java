@@ -0,0 +1,253 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A {@link ClubberRepository} kept by a {@link ClubberServer}, used by a door
+ * terminal that runs as a thin client. Every call is a single request over the
+ * {@link ClubberProtocol}; calls from several threads take turns on the one
+ * connection.
+ * 
+ * Records are copies of the server's records, so the same record fetched twice
+ * is two objects: compare records by {@link ClubberRecord#getOrdinal}. A
+ * successful {@link #commit} also updates the local copy.
+ * 
+ * The repository interface has no checked exceptions, so a failed connection
+ * or an error returned by the server is thrown as an
+ * {@link UncheckedIOException}. A server that doesn't answer in time fails the
+ * call the same way, and the connection is closed, as its next response can't
+ * be told apart from the late one.
+ */
+public class ClubberClient implements ClubberRepository, Closeable {
+    // how long connecting and waiting for a response may take, in milliseconds
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 15000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to a server.
+     * 
+     * @param host the server's host name or address
+     * @param port the server's port
+     * @throws IOException if the server can't be reached
+     */
+    public ClubberClient(String host, int port) throws IOException {
+        if (port < 0 || port > 65535)
+            throw new IOException("Bad port " + port);
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setSoTimeout(READ_TIMEOUT);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Connects to a server given as "host:port", or just "host" for the default
+     * port.
+     * 
+     * @param address the server's address
+     * @return the connected client
+     * @throws IOException if the server can't be reached
+     */
+    public static ClubberClient connect(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0)
+            return new ClubberClient(address, ClubberProtocol.DEFAULT_PORT);
+        try {
+            return new ClubberClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad port in " + address);
+        }
+    }
+
+    @Override
+    public int size() {
+        ByteBuffer response = call(new Request(ClubberProtocol.SIZE));
+        return response.getInt();
+    }
+
+    @Override
+    public ClubberRecord get(int ordinal) {
+        Request request = new Request(ClubberProtocol.GET);
+        try {
+            request.out.writeInt(ordinal);
+            ByteBuffer response = call(request);
+            if (response == null)
+                throw new IndexOutOfBoundsException("Record " + ordinal);
+            return ClubberProtocol.readRecord(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Same as {@link #get}, as records are never kept by the client.
+     */
+    @Override
+    public ClubberRecord peek(int ordinal) {
+        return get(ordinal);
+    }
+
+    @Override
+    public ClubberRecord find(String key) {
+        Request request = new Request(ClubberProtocol.FIND);
+        try {
+            ClubberProtocol.writeString(request.out, key);
+            ByteBuffer response = call(request);
+            return response == null ? null : ClubberProtocol.readRecord(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ClubberRecord add(ClubberRecord record) {
+        Request request = new Request(ClubberProtocol.ADD);
+        try {
+            ClubberProtocol.writeRecord(request.out, record);
+            ByteBuffer response = call(request);
+            if (request.status == ClubberProtocol.CONFLICT)
+                return ClubberProtocol.readRecord(response);
+            record.setOrdinal(response.getInt());
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ClubberRecord commit(ClubberRecord record, ClubberRecord edited) {
+        Request request = new Request(ClubberProtocol.COMMIT);
+        try {
+            // the server commits into its record of the same number
+            edited = edited.copy();
+            edited.setOrdinal(record.getOrdinal());
+            ClubberProtocol.writeRecord(request.out, edited);
+            ByteBuffer response = call(request);
+            if (request.status == ClubberProtocol.CONFLICT)
+                return ClubberProtocol.readRecord(response);
+
+            record.replace(edited, 0);
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Iterates over every record that isn't blank, fetching them from the server
+     * in batches.
+     */
+    @Override
+    public Iterable<ClubberRecord> records() {
+        return () -> new Iterator<ClubberRecord>() {
+            private final ArrayDeque<ClubberRecord> batch = new ArrayDeque<>();
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (batch.isEmpty() && next >= 0) {
+                    fetch();
+                }
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public ClubberRecord next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return batch.removeFirst();
+            }
+
+            private void fetch() {
+                Request request = new Request(ClubberProtocol.RECORDS);
+                try {
+                    request.out.writeInt(next);
+                    request.out.writeInt(ClubberProtocol.MAX_BATCH);
+                    ByteBuffer response = call(request);
+                    next = response.getInt();
+                    for (int count = response.getInt(); count > 0; count--) {
+                        batch.add(ClubberProtocol.readRecord(response));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * A request being written, and the status of its response once it is sent.
+     */
+    private static class Request {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        byte status;
+
+        Request(byte op) {
+            bytes.write(op);
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     * 
+     * @return the response after its status, or null if the status is
+     *         {@link ClubberProtocol#NOT_FOUND}
+     * @throws UncheckedIOException if the connection fails or the server returned
+     *                              an error
+     */
+    private synchronized ByteBuffer call(Request request) {
+        try {
+            out.writeInt(request.bytes.size());
+            request.bytes.writeTo(out);
+            out.flush();
+
+            int length = in.readInt();
+            if (length < 1 || length > ClubberProtocol.MAX_FRAME)
+                throw new IOException("Bad frame length " + length);
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+
+            ByteBuffer response = ByteBuffer.wrap(frame);
+            request.status = response.get();
+            switch (request.status) {
+                case ClubberProtocol.OK:
+                case ClubberProtocol.CONFLICT:
+                    return response;
+                case ClubberProtocol.NOT_FOUND:
+                    return null;
+                default:
+                    String message = response.remaining() >= 2 ? ClubberProtocol.readString(response) : "unknown";
+                    throw new IOException("Server error: " + message);
+            }
+        } catch (SocketTimeoutException e) {
+            try {
+                socket.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw new UncheckedIOException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk import and export of clubbers as CSV, without any GUI.
+ * 
+ * Every row holds a single clubber: its type name (see {@link ClubberType}),
+ * ID, name, surname and phone number, and then the identifiers of its type,
+ * such as the student ID of a student or the personal number of a soldier.
+ * Rows of types with fewer identifiers than the header's columns end with
+ * empty ones. The first row is a header, naming the columns as the clubbers
+ * table does, from the registered types. Fields holding a comma, a quote or a
+ * line break are quoted, with quotes doubled.
+ * 
+ * The importer streams the file in chunks. Each chunk is validated in parallel
+ * by {@link FieldValidators}, the same rules the editor frames use, and then
+ * checked for duplicates in a single pass over a {@link ClubberKeyMap} of the
+ * keys seen so far. Keys already in the database are caught by
+ * {@link ClubberRepository#add}, which claims them atomically, so rows added by
+ * other terminals during the import are never duplicated.
+ */
+public final class ClubberCsv {
+    // rows validated in parallel at once
+    private static final int CHUNK_SIZE = 8192;
+    // rows exported between progress updates
+    private static final int PROGRESS_STEP = 4096;
+
+    /**
+     * The outcome of an import.
+     */
+    public static class ImportReport {
+        private int imported;
+        private final ArrayList<String> rejected = new ArrayList<>();
+
+        /**
+         * @return the number of clubbers added to the database.
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return a message for every row that wasn't imported, with its line
+         *         number and the reason.
+         */
+        public List<String> getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return imported + " clubbers imported, " + rejected.size() + " rows rejected";
+        }
+    }
+
+    private ClubberCsv() {
+    }
+
+    /**
+     * Imports the clubbers of a CSV file into the store. Rows that are malformed,
+     * fail validation or have a key that is already in the store (or in an
+     * earlier row) are rejected and reported.
+     * 
+     * @param path    the CSV file
+     * @param store   the database to add the clubbers to
+     * @param onAdded called for every clubber added to the store, may be null
+     * @return the report of the import
+     * @throws IOException if the file can't be read
+     */
+    public static ImportReport importFile(Path path, ClubberRepository store, Consumer<ClubberRecord> onAdded)
+            throws IOException {
+        return importFile(path, store, onAdded, null);
+    }
+
+    /**
+     * Imports the clubbers of a CSV file as {@link #importFile(Path,
+     * ClubberRepository, Consumer)} does, telling the progress after every
+     * chunk. If the progress cancels the import, the rows of the chunks before
+     * stay imported.
+     * 
+     * @param path     the CSV file
+     * @param store    the database to add the clubbers to
+     * @param onAdded  called for every clubber added to the store, may be null
+     * @param progress told the rows read so far after every chunk, may be null
+     * @return the report of the import
+     * @throws IOException if the file can't be read
+     */
+    public static ImportReport importFile(Path path, ClubberRepository store, Consumer<ClubberRecord> onAdded,
+            ClubberProgress progress) throws IOException {
+        ImportReport report = new ImportReport();
+        // keys of the file's accepted rows -> line number
+        ClubberKeyMap batchKeys = new ClubberKeyMap(CHUNK_SIZE);
+
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int[] line = { 0 };
+            // skip the header
+            if (readRow(in, line) == null)
+                return report;
+
+            ArrayList<String[]> rows = new ArrayList<>(CHUNK_SIZE);
+            ArrayList<Integer> lines = new ArrayList<>(CHUNK_SIZE);
+            String[] row;
+            do {
+                row = readRow(in, line);
+                if (row != null) {
+                    rows.add(row);
+                    lines.add(line[0]);
+                }
+                if (rows.size() == CHUNK_SIZE || (row == null && !rows.isEmpty())) {
+                    importChunk(rows, lines, store, batchKeys, report, onAdded);
+                    rows.clear();
+                    lines.clear();
+                    report(progress, report.imported + report.rejected.size(), "Importing");
+                }
+            } while (row != null);
+        }
+        return report;
+    }
+
+    /**
+     * Validates a chunk of rows in parallel, then checks their keys against the
+     * rows before them and adds the valid ones to the store together, in order.
+     */
+    private static void importChunk(ArrayList<String[]> rows, ArrayList<Integer> lines, ClubberRepository store,
+            ClubberKeyMap batchKeys, ImportReport report, Consumer<ClubberRecord> onAdded) {
+        ClubberRecord[] records = new ClubberRecord[rows.size()];
+        String[] errors = new String[rows.size()];
+
+        IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            String[] row = rows.get(i);
+            int type = row.length > 0 ? ClubberRecord.typeOf(row[0]) : -1;
+            if (type < 0) {
+                errors[i] = "unknown type";
+                return;
+            }
+
+            // a row may end with empty columns its type has no identifiers for
+            int fields = ClubberRecord.fieldCount(type);
+            int columns = row.length - 1;
+            while (columns > fields && row[columns].isEmpty()) {
+                columns--;
+            }
+            if (columns != fields) {
+                errors[i] = "expected " + fields + " identifiers for a " + row[0] + " but found " + columns;
+                return;
+            }
+
+            ClubberRecord record = new ClubberRecord(type, Arrays.copyOfRange(row, 1, 1 + fields));
+            for (int field = 0; field < fields; field++) {
+                int position = FieldValidators.of(type, field).check(record.get(field));
+                if (position != FieldValidators.VALID) {
+                    errors[i] = ClubberRecord.fieldName(type, field) + " is invalid at position " + position;
+                    return;
+                }
+            }
+            records[i] = record;
+        });
+
+        // rows are checked against the rows before them first, then added together
+        String[] problems = new String[records.length];
+        List<ClubberRecord> candidates = new ArrayList<>(records.length);
+        for (int i = 0; i < records.length; i++) {
+            if (records[i] == null) {
+                problems[i] = errors[i];
+                continue;
+            }
+
+            for (String key : records[i].keys()) {
+                int earlier = batchKeys.get(key);
+                if (earlier != ClubberKeyMap.MISSING) {
+                    problems[i] = key + " is a duplicate of line " + earlier;
+                    break;
+                }
+            }
+            if (problems[i] != null)
+                continue;
+
+            for (String key : records[i].keys()) {
+                batchKeys.putIfAbsent(key, lines.get(i));
+            }
+            candidates.add(records[i]);
+        }
+
+        ClubberRecord[] holders = store.addAll(candidates);
+        for (int i = 0, c = 0; i < records.length; i++) {
+            if (problems[i] == null) {
+                ClubberRecord holder = holders[c++];
+                if (holder != null)
+                    problems[i] = heldKey(records[i], holder) + " is in the database";
+            }
+            if (problems[i] != null) {
+                report.rejected.add("line " + lines.get(i) + ": " + problems[i]);
+                continue;
+            }
+
+            report.imported++;
+            if (onAdded != null)
+                onAdded.accept(records[i]);
+        }
+    }
+
+    /**
+     * Returns the key of a record that the record holding it matches, or the
+     * record's ID if the holder was changed since.
+     */
+    private static String heldKey(ClubberRecord record, ClubberRecord holder) {
+        for (String key : record.keys()) {
+            if (holder.match(key))
+                return key;
+        }
+        return record.get(0);
+    }
+
+    /**
+     * Reads a single CSV row, which may span several lines if a quoted field
+     * holds a line break.
+     * 
+     * @param in   the CSV file
+     * @param line the number of the last line read, updated
+     * @return the fields of the row, or null at the end of the file.
+     */
+    private static String[] readRow(BufferedReader in, int[] line) throws IOException {
+        String text = in.readLine();
+        if (text == null)
+            return null;
+        line[0]++;
+
+        ArrayList<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted)
+                    break;
+                // a line break inside a quoted field
+                text = in.readLine();
+                if (text == null)
+                    throw new IOException("Unterminated quoted field at line " + line[0]);
+                line[0]++;
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c != '"')
+                    field.append(c);
+                else if (i < text.length() && text.charAt(i) == '"')
+                    field.append(text.charAt(i++));
+                else
+                    quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Exports clubbers into a CSV file, streaming them one by one.
+     * 
+     * @param path    the CSV file to write
+     * @param records the clubbers to export, see {@link ClubberStore#records()}
+     * @return the number of clubbers exported
+     * @throws IOException if the file can't be written
+     */
+    public static int exportFile(Path path, Iterable<ClubberRecord> records) throws IOException {
+        return exportFile(path, records, null);
+    }
+
+    /**
+     * Exports clubbers into a CSV file as {@link #exportFile(Path, Iterable)}
+     * does, telling the progress every few thousand clubbers. If the progress
+     * cancels the export, the partly written file is deleted.
+     * 
+     * @param path     the CSV file to write
+     * @param records  the clubbers to export, see {@link ClubberStore#records()}
+     * @param progress told the clubbers written so far, may be null
+     * @return the number of clubbers exported
+     * @throws IOException if the file can't be written
+     */
+    public static int exportFile(Path path, Iterable<ClubberRecord> records, ClubberProgress progress)
+            throws IOException {
+        int count = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeHeader(out);
+            out.newLine();
+            for (ClubberRecord record : records) {
+                writeRow(out, record);
+                out.newLine();
+                if (++count % PROGRESS_STEP == 0)
+                    report(progress, count, "Exporting");
+            }
+        } catch (CancellationException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return count;
+    }
+
+    private static void report(ClubberProgress progress, int done, String operation) {
+        if (progress != null && !progress.update(done, -1))
+            throw new CancellationException(operation + " the clubbers was cancelled");
+    }
+
+    /**
+     * Writes the header row, without a line break: the type, and a column for
+     * each identifier position of any type, see {@link ClubberType#fieldTitle}.
+     */
+    private static void writeHeader(Writer out) throws IOException {
+        out.write("Type");
+        for (int i = 0; i < ClubberType.maxFieldCount(); i++) {
+            out.write(',');
+            writeField(out, ClubberType.fieldTitle(i));
+        }
+    }
+
+    /**
+     * Writes the row of a single clubber, without a line break.
+     * 
+     * @param out    the writer
+     * @param record the clubber
+     * @throws IOException if the row can't be written
+     */
+    public static void writeRow(Writer out, ClubberRecord record) throws IOException {
+        record = record.current();
+        out.write(record.getClubberType().getName());
+        for (int i = 0; i < record.fieldCount(); i++) {
+            out.write(',');
+            writeField(out, record.get(i));
+        }
+        // every row has the header's columns, types with fewer identifiers end empty
+        for (int i = record.fieldCount(); i < ClubberType.maxFieldCount(); i++) {
+            out.write(',');
+        }
+    }
+
+    /**
+     * Writes a single field, quoting it if needed.
+     */
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
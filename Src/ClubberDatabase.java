@@ -0,0 +1,803 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The clubbers database of a DB file, without any GUI, as used by the program,
+ * the {@link ClubberCli} and the {@link ClubberServer}.
+ * 
+ * The DB file is a {@link ClubberManifest} of segment files, sharded by type
+ * and ID, which are opened as a {@link ClubberStore} that maps them and
+ * decodes records only when they are needed. Every addition and commit is also appended to a
+ * {@link ClubberJournal} next to the DB file, which is replayed when the
+ * database is opened and compacted into the DB file on a background thread and
+ * when the database is closed. The store keeps track of the records committed
+ * since the last save (by the editors' commits, the server's and the journal's
+ * alike), so a save only rewrites the segments holding them, in parallel.
+ * 
+ * The journal applies on top of the generation of the DB file last saved, and
+ * names records by their position in it, see {@link ClubberJournal}. When a
+ * save replaces the DB file, the commits made while it was written are
+ * journaled again on top of the new generation, and that journal replaces the
+ * old one. Replaying a journal only ever applies commits the DB file doesn't
+ * hold yet, to the records they were made to.
+ * 
+ * Commits and their journal entries are made under the read side of a lock
+ * whose write side is taken by compaction, so a compaction never falls between
+ * a commit and its journal entry. A commit returns once its entry is forced to
+ * the disk, by the single fsync of the journal's batch it went into, and
+ * fails with an {@link UncheckedIOException} if it can't be journaled.
+ * 
+ * A database is created, which only maps the DB file, and then loaded, which
+ * reads older files that can't be mapped and replays the journal. Loading may
+ * take a while and run on another thread, with a {@link ClubberProgress}.
+ * Meanwhile the records loaded so far can be found, but nothing can be added
+ * or committed.
+ */
+public class ClubberDatabase implements ClubberRepository, Closeable {
+    public static final Path DEFAULT_FILE = Paths.get("BKCustomers.dat");
+    public static final long COMPACT_INTERVAL_MINUTES = 5;
+    // records read between progress updates
+    private static final int PROGRESS_STEP = 4096;
+
+    private final Path file;
+    private final Path journalFile;
+    // the journal of a save's new generation, until it replaces the journal
+    private final Path nextJournalFile;
+    private final ClubberStore store;
+    // the segments last saved, replaced by every save
+    private volatile ClubberManifest manifest;
+    private final boolean created;
+    // an older DB file, without an index, whose records are read by load
+    private final boolean unmapped;
+    private volatile boolean loaded;
+    // null until loaded and once closed
+    private ClubberJournal journal;
+    // numbers journal entries and appends them in that order
+    private final Object journalLock = new Object();
+    // the records journaled as added on top of the manifest, number -> position
+    private LongIntMap journalAdds = new LongIntMap();
+    // the number of records of the manifest
+    private int journalBase;
+    // the entries journaled while a save is running, null if none is
+    private ArrayList<Unsaved> unsaved;
+    // read - a commit and its journal entry, write - compaction
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+    // one save at a time, as saves of the same generation write the same
+    // segment names. Taken before the commit lock
+    private final Object saveLock = new Object();
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Creates the database of a DB file, mapping its segments once their
+     * checksums are checked, or the file itself if it has an index. A
+     * missing file is created the first time the database is written. The
+     * database must be loaded before it is changed.
+     * 
+     * @param file the DB file
+     * @throws IOException if the file can't be read or is corrupt
+     */
+    public ClubberDatabase(Path file) throws IOException {
+        this.file = file;
+
+        // BKCustomers.dat is journaled to BKCustomers.journal
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        journalFile = file.resolveSibling(base + ".journal");
+        nextJournalFile = file.resolveSibling(base + ".journal.next");
+
+        ClubberStore opened;
+        boolean missing = false, legacy = false;
+        try {
+            manifest = ClubberManifest.open(file);
+            opened = new ClubberStore(manifest.map(), manifest.getKeyBuckets());
+        } catch (NoSuchFileException e) {
+            manifest = ClubberManifest.empty(file);
+            opened = new ClubberStore();
+            missing = true;
+        } catch (IOException e) {
+            // no index, read it the slow way, unless it's no database at all
+            try {
+                // opening it checks the header
+                new ClubberFileReader(file).close();
+            } catch (IOException unreadable) {
+                throw e;
+            }
+            manifest = ClubberManifest.empty(file);
+            opened = new ClubberStore();
+            legacy = true;
+        }
+        store = opened;
+        created = missing;
+        unmapped = legacy;
+    }
+
+    /**
+     * Creates and loads the database of a DB file.
+     * 
+     * @param file the DB file
+     * @return the database
+     * @throws IOException if the file or its journal can't be read
+     */
+    public static ClubberDatabase open(Path file) throws IOException {
+        ClubberDatabase database = new ClubberDatabase(file);
+        database.load(null);
+        return database;
+    }
+
+    /**
+     * Loads the database: reads the records of a DB file that wasn't mapped,
+     * replays the commits that didn't make it into the file, and opens a new
+     * journal. Records are found as soon as they are read or replayed.
+     * 
+     * If the progress cancels the load, nothing was written and the database
+     * must not be used any further.
+     * 
+     * @param progress told every few thousand records, may be null
+     * @throws IOException                                  if the file or its
+     *                                                      journal can't be read
+     * @throws java.util.concurrent.CancellationException if the load was
+     *                                                      cancelled
+     */
+    public void load(ClubberProgress progress) throws IOException {
+        long start = System.nanoTime();
+        if (unmapped) {
+            try (ClubberFileReader reader = new ClubberFileReader(file)) {
+                ClubberRecord record;
+                int read = 0;
+                while ((record = reader.read()) != null) {
+                    // abandoned drafts of older versions
+                    if (!record.isBlank())
+                        store.restore(record);
+                    if (++read % PROGRESS_STEP == 0)
+                        report(progress, read, reader.getCount());
+                }
+            }
+        }
+
+        report(progress, 0, -1);
+        long generation = manifest.getGeneration();
+        // left by a save that stopped once the manifest was replaced, with the
+        // commits made while it was written; of any other generation, it's unused
+        if (Files.exists(nextJournalFile)) {
+            if (ClubberJournal.generationOf(nextJournalFile) == generation)
+                Files.move(nextJournalFile, journalFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            else
+                Files.delete(nextJournalFile);
+        }
+        int replayed = ClubberJournal.replay(journalFile, generation, this::applyJournalEntry);
+        if (replayed > 0 || unmapped)
+            write(progress);
+        journal = new ClubberJournal(journalFile, manifest.getGeneration());
+        journalBase = manifest.getCount();
+        loaded = true;
+        ClubberMetrics.LOAD.recordSince(start);
+    }
+
+    private static void report(ClubberProgress progress, int done, int total) {
+        if (progress != null && !progress.update(done, total))
+            throw new CancellationException("Loading the clubbers was cancelled");
+    }
+
+    /**
+     * @return true once the database was loaded.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Applies a commit replayed from the journal to the record at its position,
+     * or adds the record. Keys are not checked, as commits of different terminals
+     * may have been journaled in a different order than they were made in. A
+     * removal blanks the record it was journaled for.
+     * 
+     * @param op       the journal operation
+     * @param position the position of the record in the DB file, or for an
+     *                 addition the number it is added with
+     * @param record   the committed record
+     * @throws IOException if there is no such record, the journal doesn't belong
+     *                     to the DB file
+     */
+    private void applyJournalEntry(byte op, int position, ClubberRecord record) throws IOException {
+        if (op == ClubberJournal.ADD) {
+            if (position != store.size())
+                throw new IOException(journalFile + " is corrupt (record " + position + " added out of order)");
+            store.restore(record);
+            return;
+        }
+
+        if ((op != ClubberJournal.UPDATE && op != ClubberJournal.REMOVE) || position < 0
+                || position >= store.size() || store.peek(position).getType() != record.getType())
+            throw new IOException(journalFile + " is corrupt (no record " + position + " to change)");
+        if (op == ClubberJournal.REMOVE)
+            store.remove(store.get(position));
+        else
+            store.restore(store.get(position), record);
+    }
+
+    /**
+     * @return true if there was no DB file when the database was opened.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * @return the store holding the records, for indexes that follow it.
+     */
+    public ClubberStore getStore() {
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public ClubberRecord get(int ordinal) {
+        return store.get(ordinal);
+    }
+
+    @Override
+    public ClubberRecord peek(int ordinal) {
+        return store.peek(ordinal);
+    }
+
+    @Override
+    public ClubberRecord find(String key) {
+        long start = System.nanoTime();
+        try {
+            return store.find(key);
+        } finally {
+            ClubberMetrics.FIND.recordSince(start);
+        }
+    }
+
+    /**
+     * Returns the record, other than the given one, that holds one of the keys
+     * of the given record. Records are compared by number, so the record may be
+     * a copy.
+     * 
+     * @param record the record to check
+     * @return the record holding one of its keys, or null if there is none
+     */
+    public ClubberRecord findDuplicate(ClubberRecord record) {
+        for (String key : record.keys()) {
+            ClubberRecord holder = store.find(key);
+            if (holder != null && holder.getOrdinal() != record.getOrdinal())
+                return holder;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a record and appends it to the journal, returning once the entry is
+     * on the disk. Blank records are only journaled once they are committed.
+     * 
+     * @throws UncheckedIOException if the record was added but can't be
+     *                              journaled, so it's lost unless the database is
+     *                              saved before the program stops
+     */
+    @Override
+    public ClubberRecord add(ClubberRecord record) {
+        checkLoaded();
+        ClubberRecord holder;
+        ClubberJournal logged = null;
+        commitLock.readLock().lock();
+        try {
+            holder = store.add(record);
+            if (holder == null && !record.isBlank())
+                logged = log(record, false);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        sync(logged);
+        return holder;
+    }
+
+    /**
+     * Adds records in order as {@link #add} does, but waits for the disk once,
+     * after all of them are journaled.
+     * 
+     * @throws UncheckedIOException if the records were added but can't be
+     *                              journaled
+     */
+    @Override
+    public ClubberRecord[] addAll(List<ClubberRecord> records) {
+        checkLoaded();
+        ClubberRecord[] holders = new ClubberRecord[records.size()];
+        ClubberJournal logged = null;
+        for (int i = 0; i < holders.length; i++) {
+            ClubberRecord record = records.get(i);
+            commitLock.readLock().lock();
+            try {
+                holders[i] = store.add(record);
+                if (holders[i] == null && !record.isBlank())
+                    logged = log(record, false);
+            } finally {
+                commitLock.readLock().unlock();
+            }
+        }
+        sync(logged);
+        return holders;
+    }
+
+    /**
+     * Commits an edited copy into a record and appends the commit to the
+     * journal, returning once the entry is on the disk.
+     * 
+     * @throws UncheckedIOException if the commit was made but can't be
+     *                              journaled, so it's lost unless the database is
+     *                              saved before the program stops
+     */
+    @Override
+    public ClubberRecord commit(ClubberRecord record, ClubberRecord edited) {
+        checkLoaded();
+        long start = System.nanoTime();
+        try {
+            ClubberRecord holder;
+            ClubberJournal logged = null;
+            commitLock.readLock().lock();
+            try {
+                // the store serializes commits of a record on it, so does the journal
+                synchronized (record) {
+                    holder = store.commit(record, edited);
+                    if (holder == null)
+                        logged = log(record, false);
+                }
+            } finally {
+                commitLock.readLock().unlock();
+            }
+            // other commits go on while this one waits for its batch
+            sync(logged);
+            return holder;
+        } finally {
+            ClubberMetrics.COMMIT.recordSince(start);
+        }
+    }
+
+    /**
+     * What {@link #purge} removed.
+     */
+    public static class PurgeReport {
+        private int checked, blank, invalid, duplicates;
+        private final ArrayList<String> removed = new ArrayList<>();
+
+        /**
+         * @return the number of records checked.
+         */
+        public int getChecked() {
+            return checked;
+        }
+
+        /**
+         * @return the number of records removed, blank ones included.
+         */
+        public int getRemovedCount() {
+            return blank + invalid + duplicates;
+        }
+
+        /**
+         * @return a message for every clubber removed, with its ID and why.
+         */
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        public String toString() {
+            return checked + " clubbers checked, " + blank + " blank, " + invalid + " invalid and " + duplicates
+                    + " duplicates removed";
+        }
+    }
+
+    /**
+     * Removes, in a single pass, the records an editor would never have
+     * committed: blank ones (abandoned drafts), ones with an invalid identifier
+     * and, if asked to, ones holding a key of an earlier record. The removals
+     * are journaled and then saved, so the DB file is rewritten without them.
+     * Drafts are only counted, as no save keeps them, and records removed
+     * before are skipped.
+     * 
+     * @param dedupe true to also remove records holding a key of an earlier one
+     * @return what was removed
+     * @throws IOException if the DB file can't be written, the removals are
+     *                     kept in the journal
+     */
+    public PurgeReport purge(boolean dedupe) throws IOException {
+        checkLoaded();
+        PurgeReport report = new PurgeReport();
+        ClubberJournal logged = null;
+        // key -> number of the first record holding it
+        ClubberKeyMap holders = dedupe ? new ClubberKeyMap(store.size()) : null;
+
+        for (int i = 0; i < store.size(); i++) {
+            ClubberRecord record = store.peek(i);
+            if (record.isRemoved())
+                continue;
+            report.checked++;
+            if (record.isBlank()) {
+                report.blank++;
+                continue;
+            }
+
+            String problem = null;
+            int field = FieldValidators.firstInvalid(record);
+            if (field != FieldValidators.VALID) {
+                problem = ClubberRecord.fieldName(record.getType(), field) + " is invalid";
+                report.invalid++;
+            } else if (dedupe) {
+                for (String key : record.keys()) {
+                    int holder = holders.get(key);
+                    if (holder != ClubberKeyMap.MISSING) {
+                        problem = key + " is also held by " + store.peek(holder).get(0);
+                        report.duplicates++;
+                        break;
+                    }
+                }
+                if (problem == null) {
+                    for (String key : record.keys()) {
+                        holders.putIfAbsent(key, i);
+                    }
+                }
+            }
+
+            if (problem != null) {
+                report.removed.add(record.get(0) + ": " + problem + ", removed");
+                ClubberJournal removed = remove(store.get(i));
+                if (removed != null)
+                    logged = removed;
+            }
+        }
+        // a single wait for the disk, once every removal is journaled
+        sync(logged);
+
+        if (report.getRemovedCount() > 0)
+            saveJournal();
+        return report;
+    }
+
+    /**
+     * Removes a record and journals the removal. The caller waits for the entry
+     * to reach the disk.
+     * 
+     * @return the journal the removal was appended to, or null
+     * @throws UncheckedIOException if the record was removed but the removal
+     *                              can't be journaled
+     */
+    private ClubberJournal remove(ClubberRecord record) {
+        commitLock.readLock().lock();
+        try {
+            synchronized (record) {
+                ClubberRecord removed = record.current();
+                store.remove(record);
+                return log(removed, true);
+            }
+        } finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Changes made before the journal is replayed would be lost to it.
+     */
+    private void checkLoaded() {
+        if (!loaded)
+            throw new IllegalStateException("The clubbers are still loading");
+    }
+
+    @Override
+    public Iterable<ClubberRecord> records() {
+        return store.records();
+    }
+
+    /**
+     * Appends a commit to the journal, so it is kept even if the program stops
+     * before the DB file is written. The entry is only queued; the caller waits
+     * for it with {@link #sync}, once it no longer holds the record or the lock.
+     * While a save is running the entry is also kept, to be journaled again on
+     * top of the generation being saved.
+     * 
+     * @param record  the committed record, or the removed record as it was
+     *                before it was removed
+     * @param removal true for a removal
+     * @return the journal the entry was appended to, or null if there's none
+     * @throws UncheckedIOException if the entry can't be appended
+     */
+    private ClubberJournal log(ClubberRecord record, boolean removal) {
+        if (journal == null)
+            return null;
+
+        ClubberRecord copy = record.current();
+        try {
+            // additions are appended in the order of their positions
+            synchronized (journalLock) {
+                byte[] entry = entryOf(copy, removal, manifest, journalAdds, journalBase);
+                if (entry == null)
+                    return null;
+                journal.append(entry);
+                if (unsaved != null)
+                    unsaved.add(new Unsaved(copy, removal));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    (removal ? "The removal of " : "The commit of ") + copy.get(0) + " can't be journaled", e);
+        }
+        return journal;
+    }
+
+    /**
+     * A journal entry made while a save is running.
+     */
+    private static class Unsaved {
+        final ClubberRecord record;
+        final boolean removal;
+
+        Unsaved(ClubberRecord record, boolean removal) {
+            this.record = record;
+            this.removal = removal;
+        }
+    }
+
+    /**
+     * Encodes a journal entry on top of a generation of the DB file: the record
+     * is named by its position in the generation, or the position it was
+     * journaled as added at, or else it is added at the next position.
+     * 
+     * @param record  the committed record, or the removed record as it was
+     *                before it was removed
+     * @param removal true for a removal
+     * @param base    the manifest of the generation
+     * @param adds    number -> position of the records journaled as added on top
+     *                of it, which gets the record if it is added
+     * @param count   the number of records of the generation
+     * @return the entry, or null for the removal of a record that was neither
+     *         saved nor journaled
+     * @throws IOException if the record can't be encoded
+     */
+    private static byte[] entryOf(ClubberRecord record, boolean removal, ClubberManifest base, LongIntMap adds,
+            int count) throws IOException {
+        int ordinal = record.getOrdinal();
+        int position = adds.get(ordinal);
+        if (position == LongIntMap.MISSING)
+            position = base.positionOf(ordinal);
+        if (position >= 0)
+            return ClubberJournal.encode(removal ? ClubberJournal.REMOVE : ClubberJournal.UPDATE, position, record);
+        if (removal)
+            return null;
+
+        position = count + adds.size();
+        adds.put(ordinal, position);
+        return ClubberJournal.encode(ClubberJournal.ADD, position, record);
+    }
+
+    /**
+     * Waits until the entries appended to a journal so far are forced to the
+     * disk, along with the rest of their batch.
+     * 
+     * @param logged the journal, or null if nothing was appended
+     * @throws UncheckedIOException if the journal can't be written
+     */
+    private static void sync(ClubberJournal logged) {
+        if (logged == null)
+            return;
+
+        try {
+            logged.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The journal can't be written", e);
+        }
+    }
+
+    /**
+     * Starts compacting the journal into the DB file every few minutes, on a
+     * background thread.
+     */
+    public void startCompaction() {
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Clubbers compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * Saves the DB file from a snapshot of the store, taken with its changes
+     * while commits are held off. Taking the snapshot only reads the store's
+     * clock, so commits go on while the records are written. They are held off
+     * again while the commits made meanwhile are journaled on top of the new
+     * generation and the manifest and the journal are replaced, which takes a
+     * couple of small writes. Runs on the compactor thread.
+     */
+    private void compact() {
+        try {
+            saveJournal();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compacts the journal into the DB file, see {@link #compact()}. Does nothing
+     * if nothing changed since the last save.
+     * 
+     * The journal of the new generation is written before the manifest is
+     * replaced, and replaces the journal after it, so a crash in between leaves
+     * it for the next load. If a save fails, its changes are put back into the
+     * store and the journal stays on the older generation, holding every commit
+     * since, for the next save.
+     */
+    private void saveJournal() throws IOException {
+        synchronized (saveLock) {
+            ClubberStore.Snapshot snapshot;
+            BitSet changes;
+            commitLock.writeLock().lock();
+            try {
+                if (journal == null || !isChanged())
+                    return;
+
+                snapshot = store.snapshot();
+                changes = store.takeChanges();
+                unsaved = new ArrayList<>();
+            } finally {
+                commitLock.writeLock().unlock();
+            }
+
+            long start = System.nanoTime();
+            ClubberManifest saved = null;
+            boolean committed = false;
+            try {
+                saved = manifest.write(snapshot, changes, null);
+                commitLock.writeLock().lock();
+                try {
+                    LongIntMap adds = new LongIntMap();
+                    int count = saved.getCount();
+                    List<byte[]> entries = new ArrayList<>();
+                    for (Unsaved entry : unsaved) {
+                        byte[] encoded = entryOf(entry.record, entry.removal, saved, adds, count);
+                        if (encoded != null)
+                            entries.add(encoded);
+                    }
+                    ClubberJournal.write(nextJournalFile, saved.getGeneration(), entries);
+                    saved.commit();
+                    committed = true;
+                    manifest = saved;
+                    journalAdds = adds;
+                    journalBase = count;
+                    journal.replace(nextJournalFile, saved.getGeneration());
+                } finally {
+                    unsaved = null;
+                    commitLock.writeLock().unlock();
+                }
+            } finally {
+                snapshot.close();
+                if (!committed) {
+                    store.putChanges(changes);
+                    if (saved != null)
+                        saved.discard();
+                    Files.deleteIfExists(nextJournalFile);
+                }
+            }
+            saved.deleteUnlisted();
+            ClubberMetrics.SAVE.recordSince(start);
+        }
+    }
+
+    /**
+     * @return true if anything was committed since the last save. Must hold the
+     *         commit lock.
+     */
+    private boolean isChanged() {
+        return store.hasChanges() || journalAdds.size() > 0;
+    }
+
+    /**
+     * Stops the compaction, once a running one finished, and writes the DB
+     * file, if anything was committed since it was written. Once the file is written the journal is no longer
+     * needed and is deleted; if writing fails it is kept to be replayed on the
+     * next startup.
+     */
+    @Override
+    public void close() throws IOException {
+        close(null);
+    }
+
+    /**
+     * Closes the database as {@link #close()} does, telling the progress while
+     * the DB file is written. If the progress cancels the write, the journal is
+     * kept to be replayed on the next startup, like a failed write.
+     * 
+     * @param progress told every few thousand records, may be null
+     * @throws IOException                                  if writing fails
+     * @throws java.util.concurrent.CancellationException if the write was
+     *                                                      cancelled
+     */
+    public void close(ClubberProgress progress) throws IOException {
+        // an interrupt would close the files being written, it's put back after
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (compactor != null) {
+                // a running compaction is let finish, not interrupted: its
+                // segments are written on other threads, and an interrupt closes
+                // the journal
+                compactor.shutdown();
+                while (!compactor.isTerminated()) {
+                    try {
+                        compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            synchronized (saveLock) {
+                commitLock.writeLock().lock();
+                try {
+                    if (journal == null)
+                        return;
+                    boolean changed = isChanged();
+                    ClubberJournal closing = journal;
+                    journal = null;
+                    // a journal that failed doesn't keep the commits from being written
+                    try {
+                        closing.close();
+                    } finally {
+                        if (changed)
+                            write(progress);
+                        else
+                            Files.deleteIfExists(journalFile);
+                    }
+                } finally {
+                    commitLock.writeLock().unlock();
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Saves the changed records into the DB file and deletes the journals, which
+     * it covers. Nothing may be committed meanwhile.
+     */
+    private void write(ClubberProgress progress) throws IOException {
+        synchronized (saveLock) {
+            try (ClubberStore.Snapshot snapshot = store.snapshot()) {
+                save(snapshot, store.takeChanges(), progress);
+            }
+            journalAdds = new LongIntMap();
+            journalBase = manifest.getCount();
+            Files.deleteIfExists(nextJournalFile);
+            Files.deleteIfExists(journalFile);
+        }
+    }
+
+    /**
+     * Saves the segments holding changes, or puts the changes back into the store
+     * if the save fails, so the next save tries them again.
+     * 
+     * @param records a snapshot of the store
+     * @param changes the numbers of the records committed since the last save
+     */
+    private void save(ClubberStore.Snapshot records, BitSet changes, ClubberProgress progress) throws IOException {
+        long start = System.nanoTime();
+        boolean saved = false;
+        try {
+            manifest = manifest.save(records, changes, progress);
+            saved = true;
+        } finally {
+            if (!saved)
+                store.putChanges(changes);
+        }
+        ClubberMetrics.SAVE.recordSince(start);
+    }
+}
@@ -0,0 +1,105 @@
+import java.awt.event.*;
+import java.util.*;
+
+/**
+ * Keeps the editor frames of {@link NightClubMgmtApp}, so opening a clubber
+ * doesn't build a frame with its panels, textfields and labels. Each
+ * {@link ClubberType} has a pool of idle frames, built and laid out ahead of
+ * time by {@link #warm}. {@link #open} binds an idle frame of the record's type
+ * to the record and shows it; once OK or Cancel hides the frame it is unbound,
+ * so it holds no record, and returned to its pool.
+ * 
+ * A clubber that is already open is brought to front rather than opened twice.
+ * A frame is only built when every frame of its type is in use, and at most
+ * {@link #MAX_IDLE} idle frames are kept per type, the rest are disposed, so
+ * frames don't pile up after a rush.
+ * 
+ * Used on the event dispatch thread only.
+ */
+public class ClubberEditorPool {
+    // idle frames kept per type, beyond them returned frames are disposed
+    private static final int MAX_IDLE = 4;
+
+    // the idle frames of each type
+    private final HashMap<ClubberType, ArrayDeque<Person>> idle = new HashMap<>();
+    // the frames in use, by the number of the record they edit. new clubbers
+    // aren't in the database yet and aren't listed
+    private final HashMap<Integer, Person> open = new HashMap<>();
+
+    /**
+     * Builds idle frames ahead of time, with their windows created and laid out
+     * but not shown, so the first clubbers opened don't wait for them.
+     * 
+     * @param perType the number of idle frames to have for each type
+     */
+    public void warm(int perType) {
+        for (int i = 0; i < ClubberType.count(); i++) {
+            ClubberType type = ClubberType.of(i);
+            ArrayDeque<Person> frames = idleOf(type);
+            while (frames.size() < Math.min(perType, MAX_IDLE)) {
+                Person editor = create(type);
+                // creates the native window and lays it out, as showing it would
+                editor.addNotify();
+                editor.validate();
+                frames.push(editor);
+            }
+        }
+    }
+
+    /**
+     * Binds an editor frame of the record's type to the record and shows it. A
+     * record that is open already has its frame brought to front.
+     * 
+     * @param record the record to edit
+     */
+    public void open(ClubberRecord record) {
+        long start = System.nanoTime();
+        Person editor = record.getOrdinal() < 0 ? null : open.get(record.getOrdinal());
+        if (editor == null) {
+            editor = idleOf(record.getClubberType()).poll();
+            if (editor == null)
+                editor = create(record.getClubberType());
+            editor.bind(record);
+            if (record.getOrdinal() >= 0)
+                open.put(record.getOrdinal(), editor);
+            editor.setVisible(true);
+        }
+        editor.toFront();
+        ClubberMetrics.OPEN_EDITOR.recordSince(start);
+    }
+
+    /**
+     * Unbinds a hidden frame and returns it to its pool, or disposes it if the
+     * pool is full.
+     */
+    private void release(Person editor) {
+        open.values().remove(editor);
+        editor.unbind();
+
+        ArrayDeque<Person> frames = idleOf(editor.getClubberType());
+        if (frames.size() < MAX_IDLE)
+            frames.push(editor);
+        else
+            editor.dispose();
+    }
+
+    /**
+     * Builds a frame for a type, which returns itself to the pool when hidden.
+     */
+    private Person create(ClubberType type) {
+        Person editor = new Person(type);
+        editor.addComponentListener(new ComponentAdapter() {
+            public void componentHidden(ComponentEvent e) {
+                release(editor);
+            }
+        });
+        return editor;
+    }
+
+    /**
+     * @return the idle frames of a type
+     */
+    private ArrayDeque<Person> idleOf(ClubberType type) {
+        return idle.computeIfAbsent(type, t -> new ArrayDeque<>());
+    }
+}
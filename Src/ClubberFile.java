@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * This class describes the binary format of the clubbers database file,
+ * written by {@link ClubberFileWriter} and read by {@link ClubberFileReader} or
+ * {@link MappedClubberFile}.
+ * 
+ * The file starts with a header: the magic number {@link #MAGIC}, the format
+ * {@link #VERSION} (short), the number of records (int) and the offset of the
+ * index (long). Each record follows as its type (byte, see
+ * {@link ClubberRecord#getType}), the length of the rest of the record in bytes
+ * (int) and then every identifier as a length-prefixed (unsigned short) UTF-8
+ * string. The number of identifiers is implied by the type.
+ * 
+ * The index comes after the records: the offset of every record (long), the
+ * number of keys (int) and then every non-empty key of every record as its
+ * {@link String#hashCode} (int) and the number of its record (int), sorted by
+ * hash. It lets the file be searched by key without decoding it.
+ * 
+ * Version 1 files have no index offset in the header and no index. All numbers
+ * are big-endian.
+ */
+public final class ClubberFile {
+    // "BKDB"
+    public static final int MAGIC = 0x424B4442;
+    public static final short VERSION = 2;
+    // magic + version + record count + index offset
+    public static final int HEADER_SIZE = 4 + 2 + 4 + 8;
+    // header of a version 1 file, without the index offset
+    public static final int V1_HEADER_SIZE = 4 + 2 + 4;
+    // offset of the record count within the header
+    public static final int COUNT_OFFSET = 4 + 2;
+    // offset of the index offset within the header
+    public static final int INDEX_OFFSET = 4 + 2 + 4;
+    // size of the buffers used for reading and writing
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private ClubberFile() {
+    }
+
+    /**
+     * Computes the {@link CRC32C} of a file, as the manifest keeps it for its
+     * segments and the key filters for the files they cover.
+     * 
+     * @param path the file
+     * @return the checksum of its bytes
+     * @throws IOException if the file can't be read
+     */
+    public static int checksum(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            crc.update(map);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encodes a record as it is stored in the file: type, length and the
+     * length-prefixed identifiers.
+     * 
+     * @param record the record to encode
+     * @return the encoded record
+     * @throws IOException if an identifier is too long to be stored
+     */
+    public static byte[] encode(ClubberRecord record) throws IOException {
+        // encode the identifiers first, their length prefixes the record
+        byte[][] fields = new byte[record.fieldCount()][];
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = record.get(i).getBytes(StandardCharsets.UTF_8);
+            if (fields[i].length > 0xFFFF)
+                throw new IOException("Identifier " + i + " is too long to be stored");
+            length += 2 + fields[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + length);
+        buffer.put((byte) record.getType());
+        buffer.putInt(length);
+        for (byte[] field : fields) {
+            buffer.putShort((short) field.length);
+            buffer.put(field);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes the record at the buffer's position, which is advanced past it. The
+     * whole record must be in the buffer.
+     * 
+     * @param buffer the buffer holding the encoded record
+     * @return the decoded record
+     * @throws IOException if the record is corrupt
+     */
+    public static ClubberRecord decode(ByteBuffer buffer) throws IOException {
+        int type = buffer.get();
+        int length = buffer.getInt();
+        if (type < 0 || type >= ClubberType.count() || length < 0 || length > buffer.remaining())
+            throw new IOException("Corrupt clubber record");
+
+        String[] fields = new String[ClubberRecord.fieldCount(type)];
+        for (int i = 0; i < fields.length; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new ClubberRecord(type, fields);
+    }
+}
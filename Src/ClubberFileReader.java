@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+
+/**
+ * Streams {@link ClubberRecord}s out of a file in the format described by
+ * {@link ClubberFile}. The file's {@link FileChannel} is read into a buffer a
+ * block at a time and records are decoded from it one by one. Both versions of
+ * the format can be read; the index is ignored.
+ */
+public class ClubberFileReader implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ClubberFile.BUFFER_SIZE);
+    private final int count;
+    private int read;
+
+    /**
+     * Opens the file and checks its header.
+     * 
+     * @param path the file to read
+     * @throws NoSuchFileException if the file does not exist
+     * @throws IOException         if the file can't be read or isn't a clubbers
+     *                             database
+     */
+    public ClubberFileReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.limit(0);
+
+        try {
+            fill(ClubberFile.V1_HEADER_SIZE);
+            if (buffer.getInt() != ClubberFile.MAGIC)
+                throw new IOException(path + " is not a clubbers database");
+            short version = buffer.getShort();
+            if (version != 1 && version != ClubberFile.VERSION)
+                throw new IOException(path + " has unsupported version " + version);
+            count = buffer.getInt();
+
+            // the index is only used by MappedClubberFile, skip its offset
+            if (version != 1) {
+                fill(8);
+                buffer.getLong();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of records in the file, as written in its header.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Reads the next record of the file.
+     * 
+     * @return the next record, or null if all records were read.
+     * @throws IOException if reading fails or the file is truncated
+     */
+    public ClubberRecord read() throws IOException {
+        if (read == count)
+            return null;
+
+        // the record's length follows its type
+        fill(1 + 4);
+        int length = buffer.getInt(buffer.position() + 1);
+        if (length < 0)
+            throw new IOException("Corrupt clubber record " + read);
+        fill(1 + 4 + length);
+
+        ClubberRecord record = ClubberFile.decode(buffer);
+        read++;
+        return record;
+    }
+
+    /**
+     * Reads every remaining record of the file.
+     * 
+     * @return a list of the records.
+     * @throws IOException if reading fails
+     */
+    public ArrayList<ClubberRecord> readAll() throws IOException {
+        ArrayList<ClubberRecord> records = new ArrayList<>(count - read);
+        ClubberRecord record;
+        while ((record = read()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Makes sure the given number of bytes is available in the buffer, reading
+     * more of the file when needed.
+     */
+    private void fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return;
+        if (bytes > buffer.capacity())
+            throw new IOException("Record of " + bytes + " bytes exceeds the read buffer");
+
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Clubbers database is truncated");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Reads every record of the given file.
+     * 
+     * @param path the file to read
+     * @return a list of the records.
+     * @throws IOException if reading fails
+     */
+    public static ArrayList<ClubberRecord> readFile(Path path) throws IOException {
+        try (ClubberFileReader reader = new ClubberFileReader(path)) {
+            return reader.readAll();
+        }
+    }
+}
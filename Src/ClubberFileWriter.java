@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams {@link ClubberRecord}s into a file in the format described by
+ * {@link ClubberFile}. Records are encoded into a buffer that is written to the
+ * file's {@link FileChannel} whenever it fills up. The offset and keys of every
+ * record are collected on the way and written as the index by
+ * {@link #close()}, which also fills in the header, flushes the file to the
+ * disk and writes its {@link ClubberKeyFilter} next to it.
+ */
+public class ClubberFileWriter implements Closeable {
+    // records written between progress updates
+    private static final int PROGRESS_STEP = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ClubberFile.BUFFER_SIZE);
+    private int count;
+    // file offset of the next record
+    private long position = ClubberFile.HEADER_SIZE;
+    // offsets[i] - offset of record i
+    private long[] offsets = new long[1024];
+    // keys[i] - key hash in the high half, record number in the low half
+    private long[] keys = new long[1024];
+    private int keyCount;
+    // CRC32C of the file, once closed
+    private int checksum;
+
+    /**
+     * Creates (or truncates) the file and writes its header.
+     * 
+     * @param path the file to write
+     * @throws IOException if the file can't be opened
+     */
+    public ClubberFileWriter(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(ClubberFile.MAGIC);
+        buffer.putShort(ClubberFile.VERSION);
+        buffer.putInt(0);
+        buffer.putLong(0);
+    }
+
+    /**
+     * Appends a record to the file.
+     * 
+     * @param record the record to write
+     * @throws IOException if writing fails
+     */
+    public void write(ClubberRecord record) throws IOException {
+        // the identifiers and the keys of a single commit
+        record = record.current();
+        byte[] bytes = ClubberFile.encode(record);
+        ensureRoom(bytes.length);
+        buffer.put(bytes);
+
+        if (count == offsets.length)
+            offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count] = position;
+        position += bytes.length;
+
+        for (String key : record.keys()) {
+            if (key.isEmpty())
+                continue;
+            if (keyCount == keys.length)
+                keys = Arrays.copyOf(keys, keyCount * 2);
+            keys[keyCount++] = ((long) key.hashCode() << 32) | count;
+        }
+        count++;
+    }
+
+    /**
+     * Writes every record of the given collection.
+     * 
+     * @param records the records to write
+     * @throws IOException if writing fails
+     */
+    public void writeAll(Iterable<ClubberRecord> records) throws IOException {
+        for (ClubberRecord record : records) {
+            write(record);
+        }
+    }
+
+    /**
+     * Writes the index, fills in the header, flushes and closes the file and
+     * writes its key filter.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = position;
+            for (int i = 0; i < count; i++) {
+                ensureRoom(8);
+                buffer.putLong(offsets[i]);
+            }
+
+            // sorting the packed entries sorts them by hash
+            Arrays.sort(keys, 0, keyCount);
+            ensureRoom(4);
+            buffer.putInt(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                ensureRoom(8);
+                buffer.putLong(keys[i]);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(4 + 8);
+            header.putInt(count).putLong(indexOffset).flip();
+            channel.write(header, ClubberFile.COUNT_OFFSET);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+
+        checksum = ClubberFile.checksum(path);
+        ClubberKeyFilter filter = new ClubberKeyFilter(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            filter.add((int) (keys[i] >> 32));
+        }
+        filter.write(path, Files.size(path), keyCount, checksum);
+    }
+
+    /**
+     * @return the {@link java.util.zip.CRC32C} of the file, once it's closed.
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Makes sure the buffer has room for the given number of bytes, flushing it
+     * when needed.
+     */
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return;
+
+        flush();
+        if (buffer.remaining() < bytes)
+            throw new IOException("Record of " + bytes + " bytes exceeds the write buffer");
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the records into the given file. The records are written to a
+     * temporary file first, which then replaces the old file, so a failed write
+     * never leaves a half-written database behind. The old file's key filter is
+     * deleted before it is replaced, so a filter never covers the wrong file.
+     * 
+     * @param path    the file to write
+     * @param records the records to write
+     * @throws IOException if writing fails
+     */
+    public static void writeFile(Path path, Iterable<ClubberRecord> records) throws IOException {
+        writeFile(path, records, -1, null);
+    }
+
+    /**
+     * Writes the records into the given file, as {@link #writeFile(Path, Iterable)}
+     * does, telling the progress. If the progress cancels the write, the old file
+     * is left as it was.
+     * 
+     * @param path     the file to write
+     * @param records  the records to write
+     * @param total    the number of records, or -1 if not known
+     * @param progress told every few thousand records, may be null
+     * @throws IOException           if writing fails
+     * @throws CancellationException if the progress cancelled the write
+     */
+    public static void writeFile(Path path, Iterable<ClubberRecord> records, int total, ClubberProgress progress)
+            throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        boolean written = false;
+        try {
+            try (ClubberFileWriter writer = new ClubberFileWriter(tmp)) {
+                for (ClubberRecord record : records) {
+                    writer.write(record);
+                    if (progress != null && writer.count % PROGRESS_STEP == 0
+                            && !progress.update(writer.count, total))
+                        throw new CancellationException("Writing " + path + " was cancelled");
+                }
+            }
+            Files.deleteIfExists(ClubberKeyFilter.pathOf(path));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+            try {
+                Files.move(ClubberKeyFilter.pathOf(tmp), ClubberKeyFilter.pathOf(path),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // the file is read without it, and its filter rebuilt
+                e.printStackTrace();
+            }
+        } finally {
+            if (!written)
+                Files.deleteIfExists(tmp);
+            Files.deleteIfExists(ClubberKeyFilter.pathOf(tmp));
+        }
+    }
+}
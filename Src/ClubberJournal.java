@@ -0,0 +1,415 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of committed clubbers. Every commit is appended as an
+ * entry, so nothing is lost if the program stops before the database file is
+ * rewritten. On startup the journal is replayed on top of the database file
+ * using {@link #replay}.
+ * 
+ * A journal applies on top of one generation of the DB file (see
+ * {@link ClubberManifest}), and identifies records by their position in it:
+ * the order the store opened from that generation numbers them in. A record
+ * the generation doesn't hold is journaled as added, at the next position after
+ * the generation's records and the ones added before it. Positions don't
+ * change when a record's ID does, so entries apply to the right records
+ * whatever order their IDs were moved in. A journal of an older generation
+ * holds nothing the DB file doesn't, and replaying it does nothing.
+ * 
+ * Appending only encodes the entry and queues it. A writer thread drains the
+ * queue, writes everything queued so far and forces it to the disk once per
+ * batch (group commit), so a burst of commits costs a single fsync.
+ * 
+ * The journal starts with the magic number {@link #MAGIC}, the format
+ * {@link #VERSION} (short) and the generation it applies on top of (long).
+ * Each entry follows as its length (int), a CRC32 of the rest (int), the
+ * operation (byte, {@link #ADD}, {@link #UPDATE} or {@link #REMOVE}), the
+ * position of the record (int) and the record itself, encoded by
+ * {@link ClubberFile#encode}. A removal holds the record as it was before it
+ * was removed. Replay stops at the first incomplete or corrupt entry, the one
+ * that was being written when the program stopped.
+ */
+public class ClubberJournal implements Closeable {
+    // "BKJN"
+    public static final int MAGIC = 0x424B4A4E;
+    public static final short VERSION = 1;
+    // operations
+    public static final byte ADD = 1, UPDATE = 2, REMOVE = 3;
+    private static final int HEADER_SIZE = 4 + 2 + 8;
+    // queued by close() to stop the writer thread
+    private static final byte[] STOP = new byte[0];
+
+    /**
+     * Applies replayed journal entries to the database.
+     */
+    public interface Replayer {
+        /**
+         * @param op       {@link #ADD}, {@link #UPDATE} or {@link #REMOVE}
+         * @param position the position of the record in the generation the
+         *                 journal applies on top of
+         * @param record   the committed record, or for {@link #REMOVE} the
+         *                 record as it was before it was removed
+         * @throws IOException if the entry doesn't fit the database, which means
+         *                     the journal or the DB file is corrupt
+         */
+        void apply(byte op, int position, ClubberRecord record) throws IOException;
+    }
+
+    private final Path path;
+    private long generation;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+    // number of entries queued / forced to the disk, guarded by this
+    private long appended, synced;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Starts an empty journal on top of a generation of the DB file, replacing
+     * the journal file if there is one, and starts its writer thread.
+     * 
+     * @param path       the journal file
+     * @param generation the generation of the DB file
+     * @throws IOException if the journal can't be written
+     */
+    public ClubberJournal(Path path, long generation) throws IOException {
+        this.path = path;
+        this.generation = generation;
+        // an old journal is replaced as a whole, never left half rewritten
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            write(tmp, generation, new ArrayList<>());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved)
+                Files.deleteIfExists(tmp);
+        }
+        channel = openChannel(path);
+
+        writer = new Thread(this::writeLoop, "Clubbers journal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the generation of the DB file the journal applies on top of.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Queues an entry to be appended to the journal.
+     * 
+     * @param entry the entry, encoded by {@link #encode}
+     * @throws IOException if the journal is closed or writing it failed
+     */
+    public synchronized void append(byte[] entry) throws IOException {
+        if (failure != null)
+            throw failure;
+        if (closed)
+            throw new IOException("Journal is closed");
+        appended++;
+        queue.add(entry);
+    }
+
+    /**
+     * Encodes a journal entry, so the record may change afterwards.
+     * 
+     * @param op       {@link #ADD}, {@link #UPDATE} or {@link #REMOVE}
+     * @param position the position of the record, see {@link ClubberJournal}
+     * @param record   the committed record, or for {@link #REMOVE} the record as
+     *                 it was before it was removed
+     * @return the bytes of the entry
+     * @throws IOException if the record can't be encoded
+     */
+    public static byte[] encode(byte op, int position, ClubberRecord record) throws IOException {
+        byte[] encoded = ClubberFile.encode(record);
+        ByteBuffer entry = ByteBuffer.allocate(4 + 4 + 1 + 4 + encoded.length);
+        entry.putInt(entry.capacity() - 8);
+        entry.putInt(0);
+        entry.put(op);
+        entry.putInt(position);
+        entry.put(encoded);
+
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), 8, entry.capacity() - 8);
+        entry.putInt(4, (int) crc.getValue());
+        return entry.array();
+    }
+
+    /**
+     * Waits until everything appended so far is forced to the disk.
+     * 
+     * @throws IOException if writing the journal failed
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        while (synced < target && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Carries the journal over to a newer generation of the DB file, once it is
+     * saved: the journal file is replaced by one written with {@link #write} on
+     * top of the new generation, holding the commits the save didn't cover. The
+     * caller makes sure nothing is appended meanwhile, so everything appended is
+     * either in the new generation or in the new file. If the journal can't be
+     * replaced, it fails: its file is of the older generation, which the DB file
+     * now covers, so nothing appended to it any more would be replayed.
+     * 
+     * @param next       the journal file of the new generation
+     * @param generation the new generation
+     * @throws IOException if the journal can't be replaced
+     */
+    public synchronized void replace(Path next, long generation) throws IOException {
+        sync();
+        try {
+            channel.close();
+            Files.move(next, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel(path);
+            this.generation = generation;
+        } catch (IOException e) {
+            failure = e;
+            notifyAll();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes everything still queued, stops the writer thread and closes the
+     * journal file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            queue.add(STOP);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            channel.close();
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * The writer thread: waits for entries and writes them in batches until it
+     * reaches {@link #STOP}.
+     */
+    private void writeLoop() {
+        boolean stop = false;
+        while (!stop) {
+            try {
+                // block until there's something to write, then take the batch
+                ArrayList<byte[]> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                stop = batch.remove(STOP);
+
+                synchronized (this) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of entries to the journal and forces them to the disk with a
+     * single fsync. Must hold the monitor.
+     */
+    private void writeBatch(ArrayList<byte[]> batch) throws IOException {
+        if (batch.isEmpty())
+            return;
+
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i));
+            bytes += buffers[i].remaining();
+        }
+        while (bytes > 0) {
+            bytes -= channel.write(buffers);
+        }
+        channel.force(false);
+
+        synced += batch.size();
+        notifyAll();
+    }
+
+    /**
+     * Writes a journal file on top of a generation of the DB file, holding the
+     * given entries, and forces it to the disk.
+     * 
+     * @param path       the file, replaced if it exists
+     * @param generation the generation of the DB file
+     * @param entries    the entries, encoded by {@link #encode}
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path path, long generation, List<byte[]> entries) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putLong(generation);
+            header.flip();
+            writeFully(out, header);
+            for (byte[] entry : entries) {
+                writeFully(out, ByteBuffer.wrap(entry));
+            }
+            out.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the generation of the DB file a journal applies on top of.
+     * 
+     * @param path the journal file
+     * @return the generation, or -1 if the file is missing or doesn't start
+     *         with a whole journal header
+     * @throws IOException if the file can't be read
+     */
+    public static long generationOf(Path path) throws IOException {
+        if (!Files.exists(path))
+            return -1;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE)
+                return -1;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(in, header, 0);
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION)
+                return -1;
+            return header.getLong(6);
+        }
+    }
+
+    /**
+     * Opens a journal file for appending.
+     */
+    private static FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Replays the entries of a journal file in the order they were appended, if
+     * it applies on top of the given generation of the DB file. A missing file,
+     * or one of an older generation, has no entries to replay. An incomplete or
+     * corrupt entry ends the replay and is cut off the file, so new entries
+     * aren't appended after it.
+     * 
+     * @param path       the journal file
+     * @param generation the generation of the DB file the records were read
+     *                   from
+     * @param replayer   applies each entry to the database
+     * @return the number of entries replayed
+     * @throws IOException if the journal can't be read, isn't a journal, or is
+     *                     of a generation the DB file doesn't have yet
+     */
+    public static int replay(Path path, long generation, Replayer replayer) throws IOException {
+        if (!Files.exists(path))
+            return 0;
+
+        int replayed = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE)
+                throw new IOException(path + " is not a clubbers journal");
+            readFully(in, header, 0);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(path + " is not a clubbers journal");
+            if (header.getShort(4) != VERSION)
+                throw new IOException(path + " has an unknown version (" + header.getShort(4) + ")");
+            long base = header.getLong(6);
+            // the DB file was saved after the journal's commits
+            if (base < generation)
+                return 0;
+            if (base > generation)
+                throw new IOException(path + " is of a newer DB file than the one read");
+
+            long position = HEADER_SIZE;
+            header = ByteBuffer.allocate(8);
+            CRC32 crc = new CRC32();
+
+            while (position + 8 <= size) {
+                header.clear();
+                readFully(in, header, position);
+                int length = header.getInt(0);
+                if (length < 0 || position + 8 + length > size)
+                    break;
+
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(in, body, position + 8);
+                crc.reset();
+                crc.update(body.array());
+                if ((int) crc.getValue() != header.getInt(4))
+                    break;
+
+                body.flip();
+                byte op = body.get();
+                int target = body.getInt();
+                replayer.apply(op, target, ClubberFile.decode(body));
+
+                position += 8 + length;
+                replayed++;
+            }
+
+            // drop a torn entry left by a crash
+            if (position < size)
+                in.truncate(position);
+        }
+        return replayed;
+    }
+
+    /**
+     * Fills the buffer from the channel, starting at the given position.
+     */
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+}
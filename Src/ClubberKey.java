@@ -0,0 +1,103 @@
+/**
+ * Packs the keys a clubber is found by into numbers. The keys have fixed
+ * formats (see {@link FieldValidators}), so each fits in 32 bits: two tag bits
+ * telling the formats apart and the value of its digits below them.
+ * <ul>
+ * <li>ID - {@code d-ddddddd|d}, its 9 digits</li>
+ * <li>student key, the number part of a student ID - {@code ddddd}</li>
+ * <li>personal number - {@code [ROC]/ddddddd}, the letter times 10^7 plus its
+ * 7 digits</li>
+ * </ul>
+ * Two keys are equal if and only if their codes are, so indexes can hold the
+ * codes instead of the strings. Keys in no fixed format (older files and
+ * journals weren't always checked) have no code and are kept as strings.
+ * Encoding scans the characters once and allocates nothing.
+ */
+public final class ClubberKey {
+    // returned for a key in no fixed format
+    public static final long NONE = -1;
+
+    private static final long ID_TAG = 1L << 30;
+    private static final long STUDENT_TAG = 2L << 30;
+    private static final long PERSONAL_TAG = 3L << 30;
+    private static final String PERSONAL_LETTERS = "ROC";
+
+    private ClubberKey() {
+    }
+
+    /**
+     * Packs a key.
+     * 
+     * @param key the key
+     * @return the key's code, or {@link #NONE} if it isn't in a fixed format.
+     */
+    public static long encode(CharSequence key) {
+        return encode(key, 0);
+    }
+
+    /**
+     * Packs a key that is the end of a longer value, as the number part of a
+     * student ID is, without cutting it out.
+     * 
+     * @param value the value holding the key
+     * @param start the position of the key in the value
+     * @return the key's code, or {@link #NONE} if it isn't in a fixed format.
+     */
+    public static long encode(CharSequence value, int start) {
+        switch (value.length() - start) {
+            case 11:
+                if (value.charAt(start + 1) != '-' || value.charAt(start + 9) != '|')
+                    return NONE;
+                long first = digits(value, start, 1);
+                long middle = digits(value, start + 2, 7);
+                long last = digits(value, start + 10, 1);
+                if (first < 0 || middle < 0 || last < 0)
+                    return NONE;
+                return ID_TAG | (first * 100_000_000 + middle * 10 + last);
+            case 5:
+                long number = digits(value, start, 5);
+                return number < 0 ? NONE : STUDENT_TAG | number;
+            case 9:
+                int letter = PERSONAL_LETTERS.indexOf(value.charAt(start));
+                if (letter < 0 || value.charAt(start + 1) != '/')
+                    return NONE;
+                long personal = digits(value, start + 2, 7);
+                return personal < 0 ? NONE : PERSONAL_TAG | (letter * 10_000_000L + personal);
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * @param code a key's code, or {@link #NONE}
+     * @return true if the key is an ID.
+     */
+    public static boolean isId(long code) {
+        return code != NONE && (code & (3L << 30)) == ID_TAG;
+    }
+
+    /**
+     * Spreads the bits of a code, for picking a lock or a slot by it.
+     * 
+     * @param code a key's code
+     * @return a well mixed hash of the code
+     */
+    public static int hash(long code) {
+        long mixed = code * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    /**
+     * @return the value of count digits from start, or -1 if one isn't a digit.
+     */
+    private static long digits(CharSequence value, int start, int count) {
+        long result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
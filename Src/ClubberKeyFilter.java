@@ -0,0 +1,164 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * A Bloom filter over the keys of a {@link ClubberFile}, which tells that a key
+ * isn't in the file without searching the file's index. Most keys looked up at
+ * the door and checked by the editors belong to people who aren't members, and
+ * the filter answers those from memory, in a few nanoseconds, while the index
+ * of a mapped file may have to be read from the disk.
+ * 
+ * The filter is split into blocks of eight 32-bit words. A key sets one bit in
+ * every word of a single block, picked by its hash, so adding and checking it
+ * reads one cache line. With {@link #BITS_PER_KEY} bits per key about one key
+ * in a hundred that isn't in the file passes the filter, and is then looked up
+ * in the index; a key that is in the file always passes. Keys are added by
+ * their {@link String#hashCode}, the hash the file's index is sorted by.
+ * 
+ * The filter is kept next to the file it covers, in a file named after it with
+ * {@link #SUFFIX} appended, written by {@link ClubberFileWriter}. It starts
+ * with the magic number {@link #MAGIC}, the format {@link #VERSION} (short),
+ * the length of the covered file (long), its number of keys (int), its
+ * {@link CRC32C} (int, see {@link ClubberFile#checksum}) and the number of
+ * blocks (int). The words of the blocks follow (int each), and the CRC32C of
+ * everything before ends it. A filter that doesn't match the length, keys and
+ * checksum of its file, or fails its own checksum, is ignored: a file replaced
+ * by another of the same length and keys would otherwise keep a filter that
+ * turns away keys it holds.
+ */
+public class ClubberKeyFilter {
+    // "BKBF"
+    public static final int MAGIC = 0x424B4246;
+    public static final short VERSION = 2;
+    public static final String SUFFIX = ".bloom";
+    // about 1% of the keys that aren't in the file pass
+    public static final int BITS_PER_KEY = 10;
+    // magic + version + file length + key count + file checksum + block count
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4 + 4;
+    private static final int WORDS_PER_BLOCK = 8;
+    // odd multipliers picking the bit of a key in each word of its block
+    private static final int[] SALTS = { 0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b,
+            0x9efc4947, 0x5c6bfb31 };
+
+    private final int[] words;
+    private final int blocks;
+
+    /**
+     * Creates an empty filter sized for the given number of keys.
+     * 
+     * @param keys the number of keys it will hold
+     */
+    public ClubberKeyFilter(int keys) {
+        this(new int[Math.max(1, (int) ((long) keys * BITS_PER_KEY / (32 * WORDS_PER_BLOCK)) + 1)
+                * WORDS_PER_BLOCK]);
+    }
+
+    private ClubberKeyFilter(int[] words) {
+        this.words = words;
+        blocks = words.length / WORDS_PER_BLOCK;
+    }
+
+    /**
+     * Adds a key.
+     * 
+     * @param hash the {@link String#hashCode} of the key
+     */
+    public void add(int hash) {
+        long mixed = ClubberKey.hash(hash & 0xFFFFFFFFL);
+        int first = block(hash) * WORDS_PER_BLOCK;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            words[first + i] |= 1 << (((int) mixed * SALTS[i]) >>> 27);
+        }
+    }
+
+    /**
+     * Checks a key. Allocates nothing.
+     * 
+     * @param hash the {@link String#hashCode} of the key
+     * @return false if the key isn't in the file, true if it may be.
+     */
+    public boolean mightContain(int hash) {
+        long mixed = ClubberKey.hash(hash & 0xFFFFFFFFL);
+        int first = block(hash) * WORDS_PER_BLOCK;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            if ((words[first + i] & (1 << (((int) mixed * SALTS[i]) >>> 27))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Picks the block of a key by the high bits of a second mix of its hash.
+     */
+    private int block(int hash) {
+        long mixed = (hash & 0xFFFFFFFFL) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (((mixed >>> 32) * blocks) >>> 32);
+    }
+
+    /**
+     * @param file a clubbers file
+     * @return the file its filter is kept in
+     */
+    public static Path pathOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Writes the filter of a clubbers file next to it.
+     * 
+     * @param file         the clubbers file the filter covers
+     * @param fileLength   the length of the file
+     * @param keyCount     the number of keys in the file's index
+     * @param fileChecksum the {@link CRC32C} of the file
+     * @throws IOException if writing fails
+     */
+    public void write(Path file, long fileLength, int keyCount, int fileChecksum) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * words.length + 4);
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(fileLength).putInt(keyCount).putInt(fileChecksum)
+                .putInt(blocks);
+        buffer.asIntBuffer().put(words);
+        buffer.position(buffer.limit() - 4);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.limit() - 4);
+        buffer.putInt((int) crc.getValue());
+        Files.write(pathOf(file), buffer.array());
+    }
+
+    /**
+     * Reads the filter kept next to a clubbers file.
+     * 
+     * @param file         the clubbers file
+     * @param fileLength   the length of the file
+     * @param keyCount     the number of keys in the file's index
+     * @param fileChecksum the {@link CRC32C} of the file
+     * @return the filter, or null if there's none or it doesn't belong to the
+     *         file as it is
+     * @throws IOException if the filter can't be read
+     */
+    public static ClubberKeyFilter read(Path file, long fileLength, int keyCount, int fileChecksum)
+            throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(pathOf(file));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE + 4 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION
+                || buffer.getLong() != fileLength || buffer.getInt() != keyCount || buffer.getInt() != fileChecksum)
+            return null;
+        int blocks = buffer.getInt();
+        if (blocks <= 0 || bytes.length != HEADER_SIZE + 4L * WORDS_PER_BLOCK * blocks + 4)
+            return null;
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - 4))
+            return null;
+
+        int[] words = new int[blocks * WORDS_PER_BLOCK];
+        buffer.asIntBuffer().get(words);
+        return new ClubberKeyFilter(words);
+    }
+}
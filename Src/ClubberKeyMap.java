@@ -0,0 +1,51 @@
+import java.util.HashMap;
+
+/**
+ * A map of clubber keys to non-negative numbers (a line, a record number), for
+ * finding duplicate keys in bulk. Keys are packed by {@link ClubberKey} into a
+ * {@link LongIntMap}, and only keys in no fixed format are kept as strings, so
+ * checking a key allocates nothing. Not thread safe.
+ */
+public class ClubberKeyMap {
+    // returned for a key that isn't in the map
+    public static final int MISSING = LongIntMap.MISSING;
+
+    private final LongIntMap codes;
+    private final HashMap<String, Integer> others = new HashMap<>();
+
+    /**
+     * Creates a map with room for the given number of keys before it grows.
+     * 
+     * @param expected the number of keys expected
+     */
+    public ClubberKeyMap(int expected) {
+        codes = new LongIntMap(expected);
+    }
+
+    /**
+     * @param key the key
+     * @return the number of the key, or {@link #MISSING}.
+     */
+    public int get(String key) {
+        long code = ClubberKey.encode(key);
+        if (code != ClubberKey.NONE)
+            return codes.get(code);
+        Integer value = others.get(key);
+        return value == null ? MISSING : value;
+    }
+
+    /**
+     * Maps a key to a number, unless the key already has one.
+     * 
+     * @param key   the key
+     * @param value the number, not negative
+     * @return the number the key already had, or {@link #MISSING} if it was put.
+     */
+    public int putIfAbsent(String key, int value) {
+        long code = ClubberKey.encode(key);
+        if (code != ClubberKey.NONE)
+            return codes.putIfAbsent(code, value);
+        Integer existing = others.putIfAbsent(key, value);
+        return existing == null ? MISSING : existing;
+    }
+}
@@ -0,0 +1,697 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * The DB file of a segmented clubbers database. The records are kept in
+ * segment files next to it, each a {@link ClubberFile} of up to
+ * {@link #SEGMENT_SIZE} records, and the DB file (the manifest) lists them.
+ * 
+ * The records are sharded by type and by the hash of their ID: a shard holds
+ * the clubbers of one type whose IDs fall into one of {@link #BUCKETS}
+ * buckets, see {@link #shardOf}, and every segment holds records of a single
+ * shard. A save rewrites only the segments holding records committed since the
+ * last save, plus the segment of each shard the new records go into, so its
+ * time follows the number of changes rather than the size of the database.
+ * The segments are written in parallel on the common {@link ForkJoinPool}, and
+ * mapped and checked in parallel when the database is opened. A key in the
+ * format of an ID is only looked for in the segments of its bucket (see
+ * {@link #getKeyBuckets}), the others are skipped without even checking their
+ * {@link ClubberKeyFilter}s.
+ * 
+ * The manifest starts with the magic number {@link #MAGIC}, the format
+ * {@link #VERSION} (short), the generation (long, one more on every save), the
+ * number of buckets (int) and the number of segments (int). Each segment
+ * follows as its file name (as {@link DataOutput#writeUTF}), its shard (int),
+ * its key bucket (int, -1 if it holds keys in the format of an ID outside its
+ * bucket), its number of records (int), its length (long) and the
+ * {@link CRC32C} of its bytes (int). The manifest ends with the CRC32C of
+ * everything before it. The segments are listed by shard, and the store
+ * numbers their records in that order.
+ * 
+ * Segments are written under new names, and the manifest to a temporary file
+ * that replaces the old one, so a save that stops half way leaves the old
+ * manifest and its segments as they were. The checksums catch segments that
+ * were torn or changed anyway. Segments no longer listed are deleted after the
+ * manifest is replaced, with the {@link ClubberKeyFilter}s kept next to them.
+ * A save may also be written and committed as two steps, {@link #write} and
+ * {@link #commit}, for the {@link ClubberDatabase} to carry its journal over
+ * to the new generation in between.
+ * 
+ * A database file from before segments opens as a manifest of a single
+ * segment, the file itself, and a manifest from before shards (version 1, or
+ * with another number of buckets) as segments of no shard. The first save
+ * shards their records.
+ */
+public class ClubberManifest {
+    // "BKMF"
+    public static final int MAGIC = 0x424B4D46;
+    public static final short VERSION = 2;
+    // records in a segment written from scratch
+    public static final int SEGMENT_SIZE = 65536;
+    // shards of each type, by the hash of the ID
+    public static final int BUCKETS = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // records written between progress updates
+    private static final int PROGRESS_STEP = 4096;
+
+    /**
+     * A segment file and the records of the store it was written from.
+     */
+    private static class Segment {
+        final String name;
+        // -1 for a segment from before shards
+        final int shard;
+        // -1 if it may hold keys in the format of an ID of any bucket
+        final int keyBucket;
+        final int count;
+        final long length;
+        final int crc;
+        // the numbers of the records it holds in the store, ascending. null if
+        // they are first to first + count
+        final int first;
+        final int[] ordinals;
+
+        Segment(String name, int shard, int keyBucket, int count, long length, int crc, int first,
+                int[] ordinals) {
+            this.name = name;
+            this.shard = shard;
+            this.keyBucket = keyBucket;
+            this.count = count;
+            this.length = length;
+            this.crc = crc;
+            this.first = first;
+            this.ordinals = ordinals;
+        }
+
+        /**
+         * @return where the segment holds the record of the given number, or -1
+         *         if it doesn't hold it.
+         */
+        int indexOf(int ordinal) {
+            if (ordinals == null)
+                return ordinal >= first && ordinal < first + count ? ordinal - first : -1;
+            return Math.max(-1, Arrays.binarySearch(ordinals, ordinal));
+        }
+
+        /**
+         * @return the numbers of the records it holds, ascending.
+         */
+        int[] ordinals() {
+            return ordinals != null ? ordinals : IntStream.range(first, first + count).toArray();
+        }
+    }
+
+    private final Path file;
+    // BKCustomers.dat has segments BKCustomers-<generation>-<n>.seg
+    private final String segmentPrefix;
+    private final long generation;
+    private final List<Segment> segments;
+    // the records of the store numbered when the manifest was saved or opened
+    private final int covered;
+    // a database file from before segments, rewritten by the first save
+    private final boolean legacy;
+    // the files written by a save that isn't committed yet, null once it is
+    private List<Path> written;
+
+    private ClubberManifest(Path file, long generation, List<Segment> segments, int covered, boolean legacy) {
+        this.file = file;
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        segmentPrefix = (dot > 0 ? name.substring(0, dot) : name) + "-";
+        this.generation = generation;
+        this.segments = segments;
+        this.covered = covered;
+        this.legacy = legacy;
+    }
+
+    /**
+     * Creates the manifest of a database without records, for a DB file that
+     * doesn't exist yet.
+     * 
+     * @param file the DB file
+     * @return the empty manifest
+     */
+    public static ClubberManifest empty(Path file) {
+        return new ClubberManifest(file, 0, new ArrayList<>(), 0, false);
+    }
+
+    /**
+     * Reads a DB file: a manifest, or a database file from before segments.
+     * 
+     * @param file the DB file
+     * @return the manifest
+     * @throws NoSuchFileException if the file does not exist
+     * @throws IOException         if the file is corrupt, or is a database file
+     *                             without an index, which can only be read with
+     *                             a {@link ClubberFileReader}
+     */
+    public static ClubberManifest open(Path file) throws IOException {
+        int magic = 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            // too short to be anything, rejected below
+        }
+        if (magic == ClubberFile.MAGIC) {
+            // a whole database in one file, checked when it's mapped
+            MappedClubberFile mapped = new MappedClubberFile(file);
+            List<Segment> segments = new ArrayList<>();
+            segments.add(new Segment(file.getFileName().toString(), -1, -1, mapped.getCount(), -1, 0, 0, null));
+            return new ClubberManifest(file, 0, segments, mapped.getCount(), true);
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < 4 + 2 + 8 + 4 + 4 || magic != MAGIC)
+            throw new IOException(file + " is not a clubbers database");
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - 4))
+            throw new IOException(file + " is corrupt (checksum mismatch)");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        in.readInt();
+        short version = in.readShort();
+        if (version != 1 && version != VERSION)
+            throw new IOException(file + " has an unknown version (" + version + ")");
+        long generation = in.readLong();
+        // shards of another number of buckets are resharded by the next save
+        boolean sharded = version == VERSION && in.readInt() == BUCKETS;
+        int segmentCount = in.readInt();
+        List<Segment> segments = new ArrayList<>();
+        int first = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            String name = in.readUTF();
+            int shard = version == 1 ? -1 : in.readInt();
+            int keyBucket = version == 1 ? -1 : in.readInt();
+            int count = in.readInt();
+            long length = in.readLong();
+            int segmentCrc = in.readInt();
+            if (!sharded)
+                shard = keyBucket = -1;
+            segments.add(new Segment(name, shard, keyBucket, count, length, segmentCrc, first, null));
+            first += count;
+        }
+        return new ClubberManifest(file, generation, segments, first, false);
+    }
+
+    /**
+     * Maps every segment, after checking its length and checksum. The segments
+     * are checked and mapped in parallel.
+     * 
+     * @return the mapped segments, in order
+     * @throws IOException if a segment is missing, corrupt or can't be mapped
+     */
+    public MappedClubberFile[] map() throws IOException {
+        List<Callable<MappedClubberFile>> tasks = new ArrayList<>();
+        for (Segment segment : segments) {
+            tasks.add(() -> map(segment));
+        }
+        return forkAll(tasks, new AtomicBoolean()).toArray(new MappedClubberFile[0]);
+    }
+
+    private MappedClubberFile map(Segment segment) throws IOException {
+        Path path = file.resolveSibling(segment.name);
+        if (!legacy) {
+            long length = Files.size(path);
+            if (length != segment.length || ClubberFile.checksum(path) != segment.crc)
+                throw new IOException(path + " is corrupt (checksum mismatch)");
+        }
+        // the file of a database from before segments has no checksum to match its filter to
+        MappedClubberFile mapped = legacy ? new MappedClubberFile(path) : new MappedClubberFile(path, segment.crc);
+        if (mapped.getCount() != segment.count)
+            throw new IOException(path + " doesn't hold the records of " + file);
+        return mapped;
+    }
+
+    /**
+     * Tells, for every segment in order, the bucket of the keys in the format of
+     * an ID it holds: a key in that format is only held by segments of its
+     * bucket, see {@link #bucketOf(long)}, or of none.
+     * 
+     * @return the bucket of each segment, -1 for one that may hold keys of any
+     *         bucket
+     */
+    public int[] getKeyBuckets() {
+        int[] buckets = new int[segments.size()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = segments.get(i).keyBucket;
+        }
+        return buckets;
+    }
+
+    /**
+     * @return the number of segments.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the generation, one more on every save, 0 for a database that was
+     *         never saved or is from before segments.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of records in the segments, which a store opened from
+     *         them numbers from 0 on.
+     */
+    public int getCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.count;
+        }
+        return count;
+    }
+
+    /**
+     * Tells the position of a record of the store in the segments: the number a
+     * store opened from them gives it.
+     * 
+     * @param ordinal the number of the record in the store the manifest was
+     *                saved from or opened into
+     * @return the position, or -1 if the segments don't hold the record (it was
+     *         added since the save, or was blank)
+     */
+    public int positionOf(int ordinal) {
+        int position = 0;
+        for (Segment segment : segments) {
+            int index = segment.indexOf(ordinal);
+            if (index >= 0)
+                return position + index;
+            position += segment.count;
+        }
+        return -1;
+    }
+
+    /**
+     * Saves the records of a store: segments holding a changed record are
+     * rewritten, the records added since the last save, and the ones whose ID
+     * moved them to another shard, are written into new segments of their shard
+     * (or into its last one if it isn't full), the other segments are kept, and
+     * the manifest is replaced. The segments are written in parallel. The
+     * snapshot must be of the store this manifest was saved from or opened into.
+     * 
+     * @param store    the records
+     * @param changes  the numbers of the records committed since the last save,
+     *                 see {@link ClubberStore#takeChanges}
+     * @param progress told every few thousand records, possibly from several
+     *                 threads at once, may be null
+     * @return the manifest of the saved database
+     * @throws IOException           if writing fails, the old manifest is kept
+     * @throws CancellationException if the progress cancelled the save, the old
+     *                               manifest is kept
+     */
+    public ClubberManifest save(ClubberStore.Snapshot store, BitSet changes, ClubberProgress progress)
+            throws IOException {
+        ClubberManifest saved = write(store, changes, progress);
+        boolean committed = false;
+        try {
+            saved.commit();
+            committed = true;
+        } finally {
+            if (!committed)
+                saved.discard();
+        }
+        saved.deleteUnlisted();
+        return saved;
+    }
+
+    /**
+     * Writes the segments of a save, as {@link #save} does, but leaves the
+     * manifest as it is. The save takes effect once the returned manifest is
+     * committed, or its segments are deleted once it is discarded.
+     * 
+     * @return the manifest of the saved database, not committed yet
+     * @throws IOException           if writing fails, nothing is left written
+     * @throws CancellationException if the progress cancelled the save, nothing
+     *                               is left written
+     */
+    public ClubberManifest write(ClubberStore.Snapshot store, BitSet changes, ClubberProgress progress)
+            throws IOException {
+        long next = generation + 1;
+        int shards = ClubberType.count() * BUCKETS;
+        // segments from before shards are all rewritten
+        boolean reshard = legacy;
+        for (Segment segment : segments) {
+            reshard |= segment.shard < 0;
+        }
+
+        // where the changed and added records go, and the segments they leave
+        IntStream.Builder[] incoming = new IntStream.Builder[shards];
+        boolean[] rewrite = new boolean[segments.size()];
+        BitSet leaving = new BitSet();
+        int from = reshard ? 0 : covered;
+        for (int ordinal = changes.nextSetBit(0); ordinal >= 0 && ordinal < from; ordinal = changes
+                .nextSetBit(ordinal + 1)) {
+            ClubberRecord record = store.peek(ordinal);
+            int target = record.isBlank() ? -1 : shardOf(record);
+            int holder = segmentOf(ordinal);
+            if (holder >= 0) {
+                rewrite[holder] = true;
+                if (segments.get(holder).shard == target)
+                    continue;
+                leaving.set(ordinal);
+            }
+            if (target >= 0)
+                incomingOf(incoming, target).add(ordinal);
+        }
+        for (int ordinal = from; ordinal < store.size(); ordinal++) {
+            ClubberRecord record = store.peek(ordinal);
+            if (!record.isBlank())
+                incomingOf(incoming, shardOf(record)).add(ordinal);
+        }
+
+        // the segments of the new manifest, by shard: kept ones as they are,
+        // the others by the number of the records to write in their place
+        List<Object> slots = new ArrayList<>();
+        List<int[]> work = new ArrayList<>();
+        List<Integer> workShards = new ArrayList<>();
+        int total = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            int[] added = incoming[shard] == null ? new int[0] : incoming[shard].build().toArray();
+            // a last segment that isn't full takes the records coming in
+            int last = -1;
+            for (int i = 0; !reshard && i < segments.size(); i++) {
+                if (segments.get(i).shard == shard)
+                    last = i;
+            }
+            if (last >= 0 && added.length > 0 && segments.get(last).count < SEGMENT_SIZE)
+                rewrite[last] = true;
+            else
+                last = -1;
+
+            for (int i = 0; !reshard && i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (segment.shard != shard)
+                    continue;
+                if (!rewrite[i]) {
+                    slots.add(segment);
+                    continue;
+                }
+                int[] members = segment.ordinals();
+                if (!leaving.isEmpty())
+                    members = Arrays.stream(members).filter(ordinal -> !leaving.get(ordinal)).toArray();
+                if (i == last) {
+                    members = IntStream.concat(Arrays.stream(members), Arrays.stream(added)).sorted().toArray();
+                    added = new int[0];
+                }
+                total += members.length;
+                slots.add(work.size());
+                work.add(members);
+                workShards.add(shard);
+            }
+            if (added.length > 0) {
+                total += added.length;
+                slots.add(work.size());
+                work.add(added);
+                workShards.add(shard);
+            }
+        }
+
+        // the records are written in parallel, every task into segments of its own
+        List<Path> written = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger names = new AtomicInteger(), progressed = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<List<Segment>>> tasks = new ArrayList<>();
+        for (int i = 0; i < work.size(); i++) {
+            int shard = workShards.get(i), all = total;
+            int[] members = work.get(i);
+            tasks.add(() -> write(store, shard, members, next, names, written, progressed, all, failed, progress));
+        }
+
+        List<Segment> saved = new ArrayList<>();
+        ClubberManifest manifest = new ClubberManifest(file, next, saved, store.size(), false);
+        manifest.written = written;
+        boolean done = false;
+        try {
+            List<List<Segment>> results = forkAll(tasks, failed);
+            for (Object slot : slots) {
+                if (slot instanceof Segment)
+                    saved.add((Segment) slot);
+                else
+                    saved.addAll(results.get((Integer) slot));
+            }
+            done = true;
+        } finally {
+            if (!done)
+                manifest.discard();
+        }
+        return manifest;
+    }
+
+    /**
+     * Commits a save written by {@link #write}: replaces the manifest with this
+     * one, which lists the new segments. The segments no longer listed are left
+     * for {@link #deleteUnlisted}.
+     * 
+     * @throws IOException if the manifest can't be replaced, the old one is kept
+     */
+    public void commit() throws IOException {
+        writeManifest(generation, segments);
+        written = null;
+        // the filter of a file from before segments, now the manifest
+        Files.deleteIfExists(ClubberKeyFilter.pathOf(file));
+    }
+
+    /**
+     * Deletes the segments written by {@link #write} for a save that won't be
+     * committed.
+     * 
+     * @throws IOException if a segment can't be deleted
+     */
+    public void discard() throws IOException {
+        if (written == null)
+            return;
+        for (Path path : written) {
+            Files.deleteIfExists(path);
+        }
+        written = null;
+    }
+
+    private static IntStream.Builder incomingOf(IntStream.Builder[] incoming, int shard) {
+        if (incoming[shard] == null)
+            incoming[shard] = IntStream.builder();
+        return incoming[shard];
+    }
+
+    /**
+     * @return the index of the segment holding a record, or -1 if none does (it
+     *         was blank when saved).
+     */
+    private int segmentOf(int ordinal) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).indexOf(ordinal) >= 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes records of a shard into new segments of up to {@link #SEGMENT_SIZE}
+     * records each, leaving blanks out. Stops once another task failed.
+     * 
+     * @param members the numbers of the records, ascending
+     * @return the segments written
+     */
+    private List<Segment> write(ClubberStore.Snapshot store, int shard, int[] members, long next,
+            AtomicInteger names, List<Path> written, AtomicInteger progressed, int total, AtomicBoolean failed,
+            ClubberProgress progress) throws IOException {
+        List<Segment> saved = new ArrayList<>();
+        int bucket = shard % BUCKETS;
+        for (int start = 0; start < members.length; start += SEGMENT_SIZE) {
+            int end = Math.min(members.length, start + SEGMENT_SIZE);
+            String name = segmentPrefix + next + "-" + names.getAndIncrement() + SEGMENT_SUFFIX;
+            Path path = file.resolveSibling(name);
+            written.add(path);
+            written.add(ClubberKeyFilter.pathOf(path));
+            int[] ordinals = new int[end - start];
+            int count = 0;
+            int keyBucket = bucket;
+            ClubberFileWriter writer = new ClubberFileWriter(path);
+            try (writer) {
+                for (int i = start; i < end; i++) {
+                    ClubberRecord record = store.peek(members[i]);
+                    if (!record.isBlank()) {
+                        writer.write(record);
+                        ordinals[count++] = members[i];
+                        if (keyBucket >= 0 && !keysIn(record, bucket))
+                            keyBucket = -1;
+                    }
+                    int done = progressed.incrementAndGet();
+                    if (done % PROGRESS_STEP == 0
+                            && (failed.get() || progress != null && !progress.update(done, total)))
+                        throw new CancellationException("Writing " + file + " was cancelled");
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            saved.add(new Segment(name, shard, keyBucket, count, Files.size(path), writer.getChecksum(), 0,
+                    Arrays.copyOf(ordinals, count)));
+        }
+        return saved;
+    }
+
+    /**
+     * @return true if every key of a record in the format of an ID is in the
+     *         given bucket.
+     */
+    private static boolean keysIn(ClubberRecord record, int bucket) {
+        for (String key : record.keys()) {
+            long code = ClubberKey.encode(key);
+            if (ClubberKey.isId(code) && bucketOf(code) != bucket)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Picks the shard of a record: its type and the bucket of its ID.
+     * 
+     * @param record a record that isn't blank
+     * @return the shard, from 0 to the number of types times {@link #BUCKETS}
+     */
+    public static int shardOf(ClubberRecord record) {
+        String id = record.get(0);
+        long code = ClubberKey.encode(id);
+        int bucket = ClubberKey.isId(code) ? bucketOf(code) : Math.floorMod(id.hashCode(), BUCKETS);
+        return record.getType() * BUCKETS + bucket;
+    }
+
+    /**
+     * Picks the bucket of an ID.
+     * 
+     * @param code the {@link ClubberKey} code of the ID
+     * @return the bucket, from 0 to {@link #BUCKETS}
+     */
+    public static int bucketOf(long code) {
+        return Math.floorMod(ClubberKey.hash(code), BUCKETS);
+    }
+
+    /**
+     * Runs tasks on the common {@link ForkJoinPool} and waits for all of them,
+     * even once one failed, so none is still writing when its files are cleaned
+     * up. A task that fails sets the flag, which the others check to stop early.
+     * 
+     * @return the results of the tasks, in order
+     * @throws IOException if a task failed with one, the first failure is thrown
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> forkAll(List<Callable<T>> tasks, AtomicBoolean failed) throws IOException {
+        Object[] results = new Object[tasks.size()];
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<ForkJoinTask<?>> forked = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            Callable<T> task = tasks.get(i);
+            int slot = i;
+            forked.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    results[slot] = task.call();
+                } catch (Throwable e) {
+                    failed.set(true);
+                    failures.add(e);
+                }
+            }));
+        }
+        // not interrupted: the tasks would go on writing
+        for (ForkJoinTask<?> task : forked) {
+            task.quietlyJoin();
+        }
+
+        // a task stopped by the failure of another doesn't hide it
+        Throwable failure = null;
+        for (Throwable e : failures) {
+            if (failure == null || failure instanceof CancellationException)
+                failure = e;
+        }
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw new IOException(failure);
+        return (List<T>) Arrays.asList(results);
+    }
+
+    /**
+     * Replaces the manifest with one listing the given segments.
+     */
+    private void writeManifest(long next, List<Segment> saved) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(next);
+        out.writeInt(BUCKETS);
+        out.writeInt(saved.size());
+        for (Segment segment : saved) {
+            out.writeUTF(segment.name);
+            out.writeInt(segment.shard);
+            out.writeInt(segment.keyBucket);
+            out.writeInt(segment.count);
+            out.writeLong(segment.length);
+            out.writeInt(segment.crc);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved)
+                Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Deletes the segment files of this DB file that the manifest doesn't list,
+     * and their key filters. A file that can't be deleted (on Windows, while
+     * still mapped) is left for the next save.
+     */
+    public void deleteUnlisted() {
+        Set<String> listed = new HashSet<>();
+        for (Segment segment : segments) {
+            listed.add(segment.name);
+            listed.add(segment.name + ClubberKeyFilter.SUFFIX);
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        String glob = segmentPrefix + "*" + SEGMENT_SUFFIX + "{," + ClubberKeyFilter.SUFFIX + "}";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : files) {
+                if (!listed.contains(path.getFileName().toString())) {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e) {
+                        // still mapped, try again next time
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
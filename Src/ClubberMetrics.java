@@ -0,0 +1,120 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.concurrent.*;
+import javax.management.*;
+
+/**
+ * The latency of the operations a door terminal waits on, each measured by a
+ * {@link LatencyHistogram}:
+ * <ul>
+ * <li>find - looking a clubber up by a key, {@link ClubberDatabase#find}</li>
+ * <li>isExist - the editors' duplicate check,
+ * {@link NightClubMgmtApp#holderOf}, without its message</li>
+ * <li>validateData - the editors' whole check before a commit, including their
+ * duplicate checks</li>
+ * <li>commit - {@link ClubberDatabase#commit}, including its journal entry</li>
+ * <li>openEditor - binding an editor frame to a clubber and showing it,
+ * {@link ClubberEditorPool#open}</li>
+ * <li>load - opening the DB file and replaying its journal</li>
+ * <li>save - writing the DB file, on close or compaction</li>
+ * </ul>
+ * The histograms always record, as recording costs two atomic updates.
+ * {@link #start} publishes them over JMX and appends them to a text file every
+ * interval, both of which are left to programs that run for long, so the
+ * command line tool doesn't pay for them.
+ */
+public final class ClubberMetrics {
+    public static final LatencyHistogram FIND = new LatencyHistogram("find");
+    public static final LatencyHistogram IS_EXIST = new LatencyHistogram("isExist");
+    public static final LatencyHistogram VALIDATE = new LatencyHistogram("validateData");
+    public static final LatencyHistogram COMMIT = new LatencyHistogram("commit");
+    public static final LatencyHistogram OPEN_EDITOR = new LatencyHistogram("openEditor");
+    public static final LatencyHistogram LOAD = new LatencyHistogram("load");
+    public static final LatencyHistogram SAVE = new LatencyHistogram("save");
+    public static final LatencyHistogram[] ALL = { FIND, IS_EXIST, VALIDATE, COMMIT, OPEN_EDITOR, LOAD, SAVE };
+
+    public static final Path DEFAULT_DUMP_FILE = Paths.get("BKMetrics.log");
+    public static final long DEFAULT_DUMP_SECONDS = 60;
+
+    private static ScheduledExecutorService dumper;
+
+    private ClubberMetrics() {
+    }
+
+    /**
+     * Registers every histogram with the platform MBean server, as
+     * {@code BKClub:type=Latency,name=<operation>}, and starts appending them to a
+     * file every interval on a background thread. Does nothing if already
+     * started.
+     * 
+     * @param file    the file to append to
+     * @param seconds the interval between dumps
+     */
+    public static synchronized void start(Path file, long seconds) {
+        if (dumper != null)
+            return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (LatencyHistogram histogram : ALL) {
+            try {
+                ObjectName name = new ObjectName("BKClub:type=Latency,name=" + histogram.getName());
+                if (!server.isRegistered(name))
+                    server.registerMBean(histogram, name);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Clubbers metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleWithFixedDelay(() -> dump(file), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic dump and appends a last one, so the file covers the
+     * whole run.
+     * 
+     * @param file the file to append to
+     */
+    public static synchronized void stop(Path file) {
+        if (dumper == null)
+            return;
+        dumper.shutdownNow();
+        dumper = null;
+        dump(file);
+    }
+
+    /**
+     * Appends the histograms to a file, as a table with a time stamp.
+     * 
+     * @param file the file to append to
+     */
+    public static void dump(Path file) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            out.write(report());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return a table of the histograms, times in microseconds.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(LocalDateTime.now().withNano(0)).append(System.lineSeparator());
+        report.append(String.format("%-14s %10s %10s %10s %10s %10s %10s %12s%n", "operation", "count", "mean", "p50",
+                "p90", "p99", "p99.9", "max"));
+        for (LatencyHistogram histogram : ALL) {
+            report.append(histogram).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+}
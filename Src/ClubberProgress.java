@@ -0,0 +1,17 @@
+/**
+ * Follows a long operation on the database, such as loading or writing the DB
+ * file, and may cancel it. It is called on the thread doing the work, every
+ * few thousand records, or on each of the threads when the work is split, as
+ * writing the DB file is.
+ */
+public interface ClubberProgress {
+    /**
+     * Tells how far the operation got.
+     * 
+     * @param done  the records handled so far
+     * @param total the records to handle, or -1 if not known
+     * @return false to cancel the operation, which then throws a
+     *         {@link java.util.concurrent.CancellationException}
+     */
+    boolean update(int done, int total);
+}
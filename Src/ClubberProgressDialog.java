@@ -0,0 +1,117 @@
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+
+/**
+ * A small window showing the progress of a database operation running on
+ * another thread, with a button to cancel it. The dialog only shows up if the
+ * operation takes longer than a moment, so quick loads and saves don't flash
+ * it.
+ */
+public class ClubberProgressDialog extends JDialog implements ClubberProgress {
+    // how long an operation runs before the dialog shows up, in milliseconds
+    private static final int SHOW_DELAY = 300;
+
+    private final JProgressBar bar = new JProgressBar();
+    private final JLabel label;
+    private final JButton cancelButton = new JButton("Cancel");
+    private final javax.swing.Timer showTimer;
+    private volatile boolean cancelled;
+    // the latest progress, shown by the event dispatch thread
+    private volatile int done, total = -1;
+    private boolean updatePending;
+
+    /**
+     * Creates the dialog, which shows up after a moment unless
+     * {@link #finish()} is called first.
+     * 
+     * @param owner   the window the dialog belongs to, may be null
+     * @param message what is being done
+     * @param hint    what cancelling does
+     */
+    public ClubberProgressDialog(Frame owner, String message, String hint) {
+        super(owner, "Please Wait");
+        label = new JLabel(message);
+        bar.setIndeterminate(true);
+        bar.setStringPainted(true);
+        bar.setString("");
+        cancelButton.setToolTipText(hint);
+
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                cancelled = true;
+                cancelButton.setEnabled(false);
+                label.setText("Cancelling...");
+            }
+        });
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(label, BorderLayout.NORTH);
+        panel.add(bar);
+        JPanel buttons = new JPanel();
+        buttons.add(cancelButton);
+        panel.add(buttons, BorderLayout.SOUTH);
+        add(panel);
+        setSize(340, 140);
+        setResizable(false);
+        setLocationRelativeTo(owner);
+
+        showTimer = new javax.swing.Timer(SHOW_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                setVisible(true);
+            }
+        });
+        showTimer.setRepeats(false);
+        showTimer.start();
+    }
+
+    /**
+     * Called by the working thread. Updates to the bar are coalesced, so the
+     * event dispatch thread is asked to show at most one at a time.
+     */
+    @Override
+    public boolean update(int done, int total) {
+        this.done = done;
+        this.total = total;
+        synchronized (this) {
+            if (!updatePending) {
+                updatePending = true;
+                SwingUtilities.invokeLater(this::showProgress);
+            }
+        }
+        return !cancelled;
+    }
+
+    private void showProgress() {
+        synchronized (this) {
+            updatePending = false;
+        }
+        int done = this.done, total = this.total;
+        if (total <= 0) {
+            bar.setIndeterminate(true);
+            bar.setString("");
+            return;
+        }
+        bar.setIndeterminate(false);
+        bar.setMaximum(total);
+        bar.setValue(done);
+        bar.setString(done + " of " + total + " clubbers");
+    }
+
+    /**
+     * @return true if the user cancelled the operation.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Closes the dialog once the operation is over, or keeps it from showing up.
+     */
+    public void finish() {
+        showTimer.stop();
+        dispose();
+    }
+}
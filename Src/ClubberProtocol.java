@@ -0,0 +1,100 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class describes the binary protocol spoken between a
+ * {@link ClubberServer} and its {@link ClubberClient}s.
+ * 
+ * Every message is a frame: its length in bytes (int) and then the message.
+ * A request is its operation (byte) followed by its arguments; the response
+ * is a status (byte) followed by its result. A client sends one request at a
+ * time and waits for its response.
+ * 
+ * Strings are length-prefixed (unsigned short) UTF-8, and records are their
+ * number (int) followed by the record as {@link ClubberFile#encode} stores it.
+ * The operations are:
+ * <ul>
+ * <li>{@link #SIZE} - returns the number of records (int)</li>
+ * <li>{@link #GET} ordinal - returns the record, or {@link #NOT_FOUND}</li>
+ * <li>{@link #FIND} key - returns the record, or {@link #NOT_FOUND}</li>
+ * <li>{@link #ADD} record - returns the number given to the record (int), or
+ * {@link #CONFLICT} and the record holding one of its keys</li>
+ * <li>{@link #COMMIT} record - commits the record into the record of the same
+ * number. Returns nothing, or {@link #CONFLICT} and the record holding one of
+ * its keys</li>
+ * <li>{@link #RECORDS} from, max - returns the number to continue from (int,
+ * -1 at the end), the number of records (int) and up to max records that aren't
+ * blank, starting at number from</li>
+ * </ul>
+ * A request that fails returns {@link #ERROR} and a message. All numbers are
+ * big-endian.
+ */
+public final class ClubberProtocol {
+    public static final int DEFAULT_PORT = 7450;
+    // largest frame accepted, either way
+    public static final int MAX_FRAME = 1 << 20;
+    // most records returned by a single RECORDS request
+    public static final int MAX_BATCH = 1024;
+
+    // operations
+    public static final byte SIZE = 1, GET = 2, FIND = 3, ADD = 4, COMMIT = 5, RECORDS = 6;
+    // statuses
+    public static final byte OK = 0, NOT_FOUND = 1, CONFLICT = 2, ERROR = 3;
+
+    private ClubberProtocol() {
+    }
+
+    /**
+     * Writes a string.
+     * 
+     * @param out   the message being written
+     * @param value the string to write
+     * @throws IOException if the string is too long
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IOException("String is too long to be sent");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string at the buffer's position.
+     * 
+     * @param buffer the message being read
+     * @return the string
+     */
+    public static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a record with its number.
+     * 
+     * @param out    the message being written
+     * @param record the record to write
+     * @throws IOException if an identifier is too long
+     */
+    public static void writeRecord(DataOutputStream out, ClubberRecord record) throws IOException {
+        out.writeInt(record.getOrdinal());
+        out.write(ClubberFile.encode(record.current()));
+    }
+
+    /**
+     * Reads a record with its number at the buffer's position.
+     * 
+     * @param buffer the message being read
+     * @return the record, numbered
+     * @throws IOException if the record is corrupt
+     */
+    public static ClubberRecord readRecord(ByteBuffer buffer) throws IOException {
+        int ordinal = buffer.getInt();
+        ClubberRecord record = ClubberFile.decode(buffer);
+        record.setOrdinal(ordinal);
+        return record;
+    }
+}
@@ -0,0 +1,344 @@
+import java.util.Arrays;
+
+/**
+ * This class holds the data of a single clubber, without any GUI. It is what
+ * the database stores; the {@link ClubAbstractEntity} frames only bind to a
+ * record while it is being edited.
+ * 
+ * The type of the record, a {@link ClubberType}, decides how many identifiers
+ * it has and which of them are keys.
+ * 
+ * Once a record is in a {@link ClubberStore} its identifiers are never changed
+ * in place. A commit replaces them as a whole with a new immutable version,
+ * stamped with the store's commit number, so a reader always sees the
+ * identifiers of a single commit, and the older versions are kept for as long
+ * as a {@link ClubberStore.Snapshot} may read them. Records that aren't in a
+ * store, such as the copy an editor commits into, are changed with
+ * {@link #set}.
+ */
+public class ClubberRecord {
+    // the numbers of the built-in types, in the order ClubberType registers them
+    public static final int PERSON = 0, STUDENT = 1, SOLDIER = 2;
+    // the stamp of a version whose commit isn't numbered yet
+    static final long PENDING = Long.MAX_VALUE;
+
+    /**
+     * The identifiers of a record as a commit left them.
+     */
+    private static class Version {
+        // the identifiers:
+        // identifierStrings[0] - id, identifierStrings[1] - name
+        // identifierStrings[2] - surname, identifierStrings[3] - phone number
+        // identifierStrings[4] on - the type's own, such as the student ID
+        // (Student) or the personal number (Soldier).
+        final String[] identifierStrings;
+        // the number of the commit that made the version, 0 for the data the
+        // store was opened with
+        volatile long stamp;
+        // the version it replaced, while a snapshot may need it
+        volatile Version older;
+
+        Version(String[] identifierStrings, long stamp, Version older) {
+            this.identifierStrings = identifierStrings;
+            this.stamp = stamp;
+            this.older = older;
+        }
+
+        /**
+         * @return the commit number, once the commit making the version has one.
+         */
+        long awaitStamp() {
+            long stamp = this.stamp;
+            // the commit is numbered right after the version is published
+            while (stamp == PENDING) {
+                Thread.onSpinWait();
+                stamp = this.stamp;
+            }
+            return stamp;
+        }
+    }
+
+    private final int type;
+
+    // the current version. replaced as a whole once the record is in a store
+    private volatile Version version;
+    // true once the record is in a store, or is a version of one
+    private volatile boolean published;
+    // true once a commit replaced the data the record was added with
+    private volatile boolean committed;
+
+    // the number of the record in its ClubberStore, -1 until it's in one
+    private int ordinal = -1;
+
+    /**
+     * Creates a record of the given type with the given identifiers.
+     * 
+     * @param type              The number of the record's {@link ClubberType}, such
+     *                          as {@link #PERSON}.
+     * @param identifierStrings The record's identifiers, as many as its type has.
+     */
+    public ClubberRecord(int type, String... identifierStrings) {
+        ClubberType clubberType = ClubberType.of(type);
+        if (identifierStrings.length != clubberType.getFieldCount())
+            throw new IllegalArgumentException(clubberType + " needs " + clubberType.getFieldCount() + " identifiers");
+
+        this.type = type;
+        version = new Version(identifierStrings.clone(), 0, null);
+    }
+
+    /**
+     * Creates a read only record holding a version of another.
+     */
+    private ClubberRecord(ClubberRecord record, Version version) {
+        type = record.type;
+        ordinal = record.ordinal;
+        this.version = version;
+        published = true;
+    }
+
+    /**
+     * Creates an empty record of the given type. Used for a newly added clubber
+     * that wasn't committed yet.
+     * 
+     * @param type The record's type.
+     * @return a record with empty identifiers.
+     */
+    public static ClubberRecord blank(int type) {
+        String[] empty = new String[fieldCount(type)];
+        Arrays.fill(empty, "");
+        return new ClubberRecord(type, empty);
+    }
+
+    /**
+     * Returns the number of identifiers a record of the given type holds.
+     * 
+     * @param type The record's type.
+     * @return the number of identifiers of the type.
+     */
+    public static int fieldCount(int type) {
+        return ClubberType.of(type).getFieldCount();
+    }
+
+    /**
+     * Returns the name of an identifier of a record type, as labeled in its
+     * editor frame.
+     * 
+     * @param type  The record's type.
+     * @param field The identifier's index.
+     * @return the identifier's name.
+     */
+    public static String fieldName(int type, int field) {
+        return ClubberType.of(type).getFieldName(field);
+    }
+
+    /**
+     * Returns the type with the given name.
+     * 
+     * @param name The name of a {@link ClubberType}.
+     * @return the type, or -1 if there's no type with that name.
+     */
+    public static int typeOf(String name) {
+        ClubberType type = ClubberType.named(name);
+        return type == null ? -1 : type.getId();
+    }
+
+    /**
+     * @return a copy of the record, which doesn't change when the record does,
+     *         and can be changed with {@link #set}.
+     */
+    public ClubberRecord copy() {
+        ClubberRecord copy = new ClubberRecord(type, version.identifierStrings);
+        copy.ordinal = ordinal;
+        return copy;
+    }
+
+    /**
+     * Returns the committed identifiers of the record as a read only record
+     * that doesn't change when the record is committed, so they can be read one
+     * by one without a commit coming between them. Shares the identifiers
+     * instead of copying them.
+     * 
+     * @return the record as it is now
+     */
+    public ClubberRecord current() {
+        return published ? new ClubberRecord(this, version) : copy();
+    }
+
+    /**
+     * Marks the record as being in a store, from then on it is only changed by
+     * {@link #replace}. Called by {@link ClubberStore} only.
+     * 
+     * @param stamp the number of the commit adding the record, {@link #PENDING}
+     *              until it's known, or 0 for a record the store was opened with
+     */
+    void publish(long stamp) {
+        version.stamp = stamp;
+        published = true;
+    }
+
+    /**
+     * Replaces the identifiers of the record with those of an edited copy, as a
+     * whole. A record in a store keeps its previous version for snapshots, until
+     * {@link #stamp} drops it.
+     * 
+     * @param edited the new data of the record
+     * @param stamp  the number of the commit, or {@link #PENDING} until it's
+     *               known
+     */
+    void replace(ClubberRecord edited, long stamp) {
+        String[] identifiers = edited.version.identifierStrings.clone();
+        version = new Version(identifiers, stamp, published ? version : null);
+        committed = true;
+    }
+
+    /**
+     * Numbers the commit of the current version, and drops the versions no
+     * snapshot can read anymore.
+     * 
+     * @param stamp  the number of the commit
+     * @param oldest the stamp of the oldest open snapshot, {@link #PENDING} if
+     *               there is none
+     */
+    void stamp(long stamp, long oldest) {
+        Version current = version;
+        current.stamp = stamp;
+        // keep the newest version the oldest snapshot sees, drop the rest
+        for (Version kept = current; kept != null; kept = kept.older) {
+            if (kept.awaitStamp() <= oldest) {
+                kept.older = null;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the record as it was after a commit: its newest version that is
+     * no newer than the commit, as a read only record.
+     * 
+     * @param stamp the number of the commit
+     * @return the record as it was, or null if it wasn't in the store yet
+     */
+    ClubberRecord at(long stamp) {
+        for (Version kept = version; kept != null; kept = kept.older) {
+            if (kept.awaitStamp() <= stamp)
+                return new ClubberRecord(this, kept);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of the record in its {@link ClubberStore}, or -1 if it
+     *         isn't in a store.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Sets the number of the record in its store. Called by {@link ClubberStore}.
+     * 
+     * @param ordinal the number of the record
+     */
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * @return the number of the record's type.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return the record's type.
+     */
+    public ClubberType getClubberType() {
+        return ClubberType.of(type);
+    }
+
+    /**
+     * @return the number of identifiers of this record.
+     */
+    public int fieldCount() {
+        return version.identifierStrings.length;
+    }
+
+    /**
+     * @param i The identifier's index.
+     * @return the committed value of the identifier.
+     */
+    public String get(int i) {
+        return version.identifierStrings[i];
+    }
+
+    /**
+     * Changes an identifier of a record that isn't in a store. Records in a
+     * store are changed by committing an edited copy.
+     * 
+     * @param i     The identifier's index.
+     * @param value The new value of the identifier.
+     * @throws IllegalStateException if the record is in a store
+     */
+    public void set(int i, String value) {
+        if (published)
+            throw new IllegalStateException("Record " + ordinal + " is in a store, commit a copy of it");
+        version.identifierStrings[i] = value;
+    }
+
+    /**
+     * @return true if the record was never committed (it has no ID).
+     */
+    public boolean isBlank() {
+        return version.identifierStrings[0].isEmpty();
+    }
+
+    /**
+     * @return true if a commit blanked the record, as removing it does, rather
+     *         than the record never being committed.
+     */
+    public boolean isRemoved() {
+        return committed && isBlank();
+    }
+
+    /**
+     * Checks if given key matches one of the record's keys, as its type
+     * declares them: the ID for every type, the number part of the student ID for
+     * a student and the personal number for a soldier. Keys that are part of an
+     * identifier are compared in place.
+     * 
+     * @param key The key to be matched.
+     * @return true if key matches the record, otherwise false.
+     */
+    public boolean match(String key) {
+        ClubberType type = getClubberType();
+        String[] identifierStrings = version.identifierStrings;
+        for (int i = 0; i < type.getKeyCount(); i++) {
+            String value = identifierStrings[type.getKeyField(i)];
+            int start = type.getKeyStart(i);
+            if (start == 0 ? key.equals(value)
+                    : value.length() > start && key.length() == value.length() - start
+                            && value.startsWith(key, start))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns every committed key the record can be found by, the same keys
+     * {@link #match} compares against.
+     * 
+     * @return the committed keys of the record, empty keys included.
+     */
+    public String[] keys() {
+        ClubberType type = getClubberType();
+        String[] identifierStrings = version.identifierStrings;
+        String[] keys = new String[type.getKeyCount()];
+        for (int i = 0; i < keys.length; i++) {
+            String value = identifierStrings[type.getKeyField(i)];
+            int start = type.getKeyStart(i);
+            keys[i] = start == 0 ? value : value.length() > start ? value.substring(start) : "";
+        }
+        return keys;
+    }
+}
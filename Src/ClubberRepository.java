@@ -0,0 +1,89 @@
+import java.util.List;
+
+/**
+ * The operations the application needs from a clubbers database. Every
+ * operation is safe to call from any thread, so several door terminals can
+ * register and check in clubbers on the same database at once.
+ * 
+ * Keys are claimed atomically: {@link #add} and {@link #commit} check that no
+ * other record holds the new keys and take them in a single step, returning the
+ * record that already holds a key instead of changing anything. A separate
+ * {@link #find} before adding is therefore only a hint for the user, never a
+ * guarantee.
+ */
+public interface ClubberRepository {
+    /**
+     * @return the number of records in the database, blank ones included.
+     */
+    int size();
+
+    /**
+     * Returns a record by its number.
+     * 
+     * @param ordinal the number of the record, from 0 to {@link #size()}
+     * @return the record
+     */
+    ClubberRecord get(int ordinal);
+
+    /**
+     * Returns a record by its number, without keeping it in memory if it was
+     * not needed before. Used to go over many records once.
+     * 
+     * @param ordinal the number of the record, from 0 to {@link #size()}
+     * @return the record
+     */
+    ClubberRecord peek(int ordinal);
+
+    /**
+     * Searches a record by key. The empty key belongs to blank records and is
+     * never found.
+     * 
+     * @param key a string to search for
+     * @return the record itself, if it's found, otherwise null
+     */
+    ClubberRecord find(String key);
+
+    /**
+     * Adds a record, unless one of its keys is already held by another record.
+     * 
+     * @param record the record to add, it may still be blank
+     * @return null if the record was added, otherwise the record holding one of
+     *         its keys
+     */
+    ClubberRecord add(ClubberRecord record);
+
+    /**
+     * Adds records in order, each as {@link #add} does. Used for bulk imports,
+     * which a database may make durable all at once rather than one record at a
+     * time.
+     * 
+     * @param records the records to add
+     * @return for every record, null if it was added, otherwise the record
+     *         holding one of its keys
+     */
+    default ClubberRecord[] addAll(List<ClubberRecord> records) {
+        ClubberRecord[] holders = new ClubberRecord[records.size()];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = add(records.get(i));
+        }
+        return holders;
+    }
+
+    /**
+     * Copies the identifiers of an edited copy into a record of the database,
+     * unless one of the new keys is already held by another record.
+     * 
+     * @param record the record to update, already in the database
+     * @param edited the new data of the record, of the same type
+     * @return null if the record was updated, otherwise the record holding one
+     *         of the new keys
+     */
+    ClubberRecord commit(ClubberRecord record, ClubberRecord edited);
+
+    /**
+     * Iterates over every record that isn't blank, in order.
+     * 
+     * @return the committed records of the database
+     */
+    Iterable<ClubberRecord> records();
+}
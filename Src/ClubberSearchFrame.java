@@ -0,0 +1,110 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.event.*;
+
+/**
+ * A {@link JFrame} to find clubbers as you type. Every change of the search
+ * field searches a {@link ClubberSearchIndex} and lists the matching clubbers;
+ * double clicking one (or pressing Enter) opens it.
+ */
+public class ClubberSearchFrame extends JFrame {
+    // the most clubbers listed at once
+    private static final int MAX_RESULTS = 50;
+
+    private final ClubberRepository store;
+    private final ClubberSearchIndex index;
+    private final JTextField searchField = new JTextField(30);
+    private final DefaultListModel<ClubberRecord> results = new DefaultListModel<>();
+    private final JList<ClubberRecord> resultsList = new JList<>(results);
+    private final JLabel status = new JLabel(" ");
+
+    /**
+     * Creates the frame.
+     * 
+     * @param store  the database the results come from
+     * @param index  the index to search
+     * @param opener called with the clubber the user chose to open
+     */
+    public ClubberSearchFrame(ClubberRepository store, ClubberSearchIndex index, Consumer<ClubberRecord> opener) {
+        this.store = store;
+        this.index = index;
+
+        // search on every change of the text
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+
+        // open the chosen clubber
+        resultsList.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected,
+                    boolean focused) {
+                return super.getListCellRendererComponent(list, describe((ClubberRecord) value), index, selected,
+                        focused);
+            }
+        });
+        resultsList.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && resultsList.getSelectedValue() != null)
+                    opener.accept(resultsList.getSelectedValue());
+            }
+        });
+        ActionListener openFirst = e -> {
+            ClubberRecord chosen = resultsList.getSelectedValue();
+            if (chosen == null && !results.isEmpty())
+                chosen = results.get(0);
+            if (chosen != null)
+                opener.accept(chosen);
+        };
+        searchField.addActionListener(openFirst);
+
+        JPanel top = new JPanel();
+        top.add(new JLabel("Search"));
+        top.add(searchField);
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(resultsList));
+        add(status, BorderLayout.SOUTH);
+        setTitle("Quick Search");
+        setSize(500, 400);
+        setLocationRelativeTo(null);
+    }
+
+    /**
+     * Searches the typed text and lists the results.
+     */
+    private void search() {
+        long start = System.nanoTime();
+        List<Integer> found = index.search(searchField.getText(), MAX_RESULTS);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        results.clear();
+        for (int ordinal : found) {
+            results.addElement(store.get(ordinal));
+        }
+        status.setText(found.size() + (found.size() == MAX_RESULTS ? "+" : "") + " clubbers (" + micros + " us)");
+    }
+
+    /**
+     * @return a single line describing the clubber.
+     */
+    private static String describe(ClubberRecord record) {
+        StringBuilder text = new StringBuilder(record.getClubberType().getName());
+        for (int i = 0; i < record.fieldCount(); i++) {
+            text.append("  ").append(record.get(i));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,420 @@
+import java.util.*;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A search index over every identifier of the clubbers in a
+ * {@link ClubberStore}: ID, name, surname, phone number, student ID (whole and
+ * its number part) and personal number. It finds clubbers by any prefix of any
+ * of them, ignoring case, and tolerates a single typo (a wrong, missing, extra
+ * or swapped character) in the typed text.
+ * 
+ * The terms of the records the index is built from are sorted and kept in a
+ * single string, with the numbers of the records holding each term in a
+ * single {@code int[]}, so a prefix is a range of terms found by a binary
+ * search and a million clubbers take a few bytes per term rather than the
+ * objects of a map entry each. Records committed after the build are indexed
+ * again in a small {@link TreeMap}, and their built terms are skipped. Typos
+ * are handled by searching the prefixes one edit away from the typed text
+ * after the exact ones, but only those whose changed character follows the
+ * unchanged part in some term. The index follows the store as a
+ * {@link ClubberStore.Listener}, so commits update it without a rebuild.
+ * Commits may come from any thread, so the index is synchronized.
+ * 
+ * Building the index reads every record and takes a while on a large
+ * database, so it is meant to run off the event dispatch thread. The index
+ * follows the store from before the build starts: the build reads a
+ * {@link ClubberStore.Snapshot}, and the records committed meanwhile are
+ * indexed again afterwards, as they are by then.
+ */
+public class ClubberSearchIndex implements ClubberStore.Listener {
+    // typed texts shorter than this are only searched as they are
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    /**
+     * The numbers of the records holding a term, ascending.
+     */
+    private static class Postings {
+        private int[] ordinals = new int[1];
+        private int size;
+
+        void add(int ordinal) {
+            int i = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (i >= 0)
+                return;
+            i = -i - 1;
+            if (size == ordinals.length)
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            System.arraycopy(ordinals, i, ordinals, i + 1, size - i);
+            ordinals[i] = ordinal;
+            size++;
+        }
+
+        boolean remove(int ordinal) {
+            int i = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (i < 0)
+                return false;
+            System.arraycopy(ordinals, i + 1, ordinals, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+
+    // the terms of the records the index was built from, sorted and joined
+    private final String pool;
+    // termStarts[t] - where term t starts in the pool, then the pool's length
+    private final int[] termStarts;
+    // postingStarts[t] - where the numbers of the records holding term t start
+    // in postings, then the number of postings
+    private final int[] postingStarts;
+    private final int[] postings;
+    // records whose built terms are out of date. their terms are in changed
+    private final BitSet moved = new BitSet();
+    // term -> numbers of the records holding it, for the records committed or
+    // added since the build
+    private final TreeMap<String, Postings> changed = new TreeMap<>();
+    // while the store is scanned, the numbers of the records committed meanwhile.
+    // null once it's scanned
+    private Set<Integer> pending = new HashSet<>();
+    // records committed during the scan that weren't indexed again yet. their
+    // commits are left to the build
+    private final Set<Integer> unsettled = new HashSet<>();
+
+    /**
+     * Builds the index from every record of the store and follows it from then
+     * on. Takes a while on a large database; may run on any thread.
+     * 
+     * @param store the database to index
+     */
+    public ClubberSearchIndex(ClubberStore store) {
+        // following the store first, so no commit made during the build is missed
+        store.addListener(this);
+        try (ClubberStore.Snapshot snapshot = store.snapshot()) {
+            // every term of every record, in order of the records
+            StringBuilder text = new StringBuilder();
+            int[] starts = new int[1024];
+            int[] owners = new int[1024];
+            int count = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                for (String term : termsOf(snapshot.peek(i))) {
+                    if (count == owners.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        owners = Arrays.copyOf(owners, count * 2);
+                    }
+                    starts[count] = text.length();
+                    owners[count++] = i;
+                    text.append(term);
+                }
+            }
+
+            // sorted by term, each term's records staying in order
+            String all = text.toString();
+            text = null;
+            int[] ends = Arrays.copyOf(starts, count);
+            for (int i = 0; i < count; i++) {
+                ends[i] = i + 1 < count ? starts[i + 1] : all.length();
+            }
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            int[] termBegins = starts;
+            sort(order, (a, b) -> compare(all, termBegins[a], ends[a], all, termBegins[b], ends[b]));
+
+            // the distinct terms, each with the records holding it
+            StringBuilder joined = new StringBuilder();
+            int[] termOffsets = new int[Math.max(count, 1) + 1];
+            int[] postingOffsets = new int[Math.max(count, 1) + 1];
+            int[] ordinals = new int[count];
+            int terms = 0;
+            for (int i = 0; i < count; i++) {
+                int k = order[i];
+                if (i == 0 || compare(all, starts[k], ends[k], all, starts[order[i - 1]], ends[order[i - 1]]) != 0) {
+                    termOffsets[terms] = joined.length();
+                    postingOffsets[terms++] = i;
+                    joined.append(all, starts[k], ends[k]);
+                }
+                ordinals[i] = owners[k];
+            }
+            termOffsets[terms] = joined.length();
+            postingOffsets[terms] = count;
+            pool = joined.toString();
+            termStarts = Arrays.copyOf(termOffsets, terms + 1);
+            postingStarts = Arrays.copyOf(postingOffsets, terms + 1);
+            postings = ordinals;
+
+            // records committed during the scan take the place of what was
+            // indexed for them. commits from now on are indexed as they come,
+            // except those of the records still to be indexed again
+            ArrayList<Integer> committed;
+            synchronized (this) {
+                committed = new ArrayList<>(pending);
+                unsettled.addAll(pending);
+                pending = null;
+            }
+            for (int ordinal : committed) {
+                ClubberRecord record = store.get(ordinal);
+                // commits of a record are made under its lock, so none is half
+                // done, and the ones made so far are all in its current data
+                synchronized (record) {
+                    synchronized (this) {
+                        moved.set(ordinal);
+                        add(record.current(), ordinal);
+                        unsettled.remove(ordinal);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void indexed(ClubberRecord record) {
+        if (pending != null) {
+            pending.add(record.getOrdinal());
+        } else if (!unsettled.contains(record.getOrdinal())) {
+            moved.set(record.getOrdinal());
+            add(record, record.getOrdinal());
+        }
+    }
+
+    @Override
+    public synchronized void unindexed(ClubberRecord record) {
+        if (pending != null) {
+            pending.add(record.getOrdinal());
+        } else if (!unsettled.contains(record.getOrdinal())) {
+            // the built terms are skipped from now on, the changed ones removed
+            if (!moved.get(record.getOrdinal()))
+                moved.set(record.getOrdinal());
+            else
+                remove(record, record.getOrdinal());
+        }
+    }
+
+    /**
+     * Adds the terms of a record to the changed terms. Must hold the index's
+     * lock.
+     */
+    private void add(ClubberRecord record, int ordinal) {
+        for (String term : termsOf(record)) {
+            changed.computeIfAbsent(term, t -> new Postings()).add(ordinal);
+        }
+    }
+
+    /**
+     * Removes the terms of a record from the changed terms. Must hold the
+     * index's lock.
+     */
+    private void remove(ClubberRecord record, int ordinal) {
+        for (String term : termsOf(record)) {
+            Postings postings = changed.get(term);
+            if (postings != null && postings.remove(ordinal) && postings.size == 0)
+                changed.remove(term);
+        }
+    }
+
+    /**
+     * Searches records by the beginning of any of their identifiers. Records
+     * whose identifier starts with the text come first, then records that match
+     * it with a single typo.
+     * 
+     * @param text  the typed text
+     * @param limit the maximum number of records to return
+     * @return the numbers of the matching records, see {@link ClubberStore#get}
+     */
+    public synchronized List<Integer> search(String text, int limit) {
+        String prefix = normalize(text.trim());
+        LinkedHashSet<Integer> results = new LinkedHashSet<>();
+        if (prefix.isEmpty())
+            return new ArrayList<>();
+
+        collect(prefix, results, limit);
+        if (prefix.length() >= MIN_FUZZY_LENGTH) {
+            for (String variant : typos(prefix)) {
+                if (results.size() >= limit)
+                    break;
+                collect(variant, results, limit);
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Adds the records holding a term that starts with the prefix, until there
+     * are enough results.
+     */
+    private void collect(String prefix, LinkedHashSet<Integer> results, int limit) {
+        for (int term = ceiling(prefix); term < termCount() && startsWith(term, prefix); term++) {
+            for (int i = postingStarts[term]; i < postingStarts[term + 1]; i++) {
+                if (results.size() >= limit)
+                    return;
+                if (!moved.get(postings[i]))
+                    results.add(postings[i]);
+            }
+        }
+        for (Map.Entry<String, Postings> entry : changed.tailMap(prefix, true).entrySet()) {
+            if (results.size() >= limit || !entry.getKey().startsWith(prefix))
+                return;
+            Postings postings = entry.getValue();
+            for (int i = 0; i < postings.size && results.size() < limit; i++) {
+                results.add(postings.ordinals[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the texts a single typo away from the given one that some term
+     * starts with: two characters swapped, a character replaced, removed or
+     * inserted. A replaced or inserted character is only tried if a term goes
+     * on with it after the characters before it. Swaps come first, as the most
+     * common typo.
+     */
+    private ArrayList<String> typos(String text) {
+        LinkedHashSet<String> swaps = new LinkedHashSet<>(), replaced = new LinkedHashSet<>(),
+                removed = new LinkedHashSet<>(), inserted = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            String head = text.substring(0, i);
+            char c = text.charAt(i);
+            if (i + 1 < text.length() && c != text.charAt(i + 1))
+                swaps.add(head + text.charAt(i + 1) + c + text.substring(i + 2));
+            removed.add(head + text.substring(i + 1));
+            // inserting at the end is already covered by the prefix search
+            for (char next : nextChars(head)) {
+                if (next != c)
+                    replaced.add(head + next + text.substring(i + 1));
+                inserted.add(head + next + text.substring(i));
+            }
+        }
+
+        ArrayList<String> variants = new ArrayList<>(swaps);
+        variants.addAll(replaced);
+        variants.addAll(removed);
+        variants.addAll(inserted);
+        return variants;
+    }
+
+    /**
+     * Returns the characters that follow a text in the terms starting with it,
+     * by skipping from one to the next with binary searches.
+     */
+    private TreeSet<Character> nextChars(String head) {
+        TreeSet<Character> chars = new TreeSet<>();
+        int term = ceiling(head);
+        while (term < termCount() && startsWith(term, head)) {
+            int start = termStarts[term];
+            if (termStarts[term + 1] - start == head.length()) {
+                term++;
+                continue;
+            }
+            char c = pool.charAt(start + head.length());
+            chars.add(c);
+            if (c == Character.MAX_VALUE)
+                break;
+            term = ceiling(head + (char) (c + 1));
+        }
+
+        String key = changed.ceilingKey(head);
+        while (key != null && key.startsWith(head)) {
+            if (key.length() == head.length()) {
+                key = changed.higherKey(key);
+                continue;
+            }
+            char c = key.charAt(head.length());
+            chars.add(c);
+            if (c == Character.MAX_VALUE)
+                break;
+            key = changed.ceilingKey(head + (char) (c + 1));
+        }
+        return chars;
+    }
+
+    private int termCount() {
+        return termStarts.length - 1;
+    }
+
+    /**
+     * @return the first built term at or after the text.
+     */
+    private int ceiling(String text) {
+        int low = 0, high = termCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(pool, termStarts[middle], termStarts[middle + 1], text, 0, text.length()) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private boolean startsWith(int term, String prefix) {
+        int start = termStarts[term];
+        return termStarts[term + 1] - start >= prefix.length() && pool.regionMatches(start, prefix, 0, prefix.length());
+    }
+
+    /**
+     * Compares two parts of strings as {@link String#compareTo} compares
+     * strings.
+     */
+    private static int compare(String a, int aStart, int aEnd, String b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < length; i++) {
+            char c = a.charAt(aStart + i), d = b.charAt(bStart + i);
+            if (c != d)
+                return c - d;
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+
+    /**
+     * Sorts numbers by a comparison, keeping equal ones in order. A merge sort,
+     * so the numbers aren't boxed for a {@link Comparator}.
+     */
+    private static void sort(int[] numbers, IntBinaryOperator comparison) {
+        int[] from = numbers, to = new int[numbers.length];
+        for (int width = 1; width < numbers.length; width *= 2) {
+            for (int low = 0; low < numbers.length; low += 2 * width) {
+                int middle = Math.min(low + width, numbers.length);
+                int high = Math.min(low + 2 * width, numbers.length);
+                int i = low, j = middle, k = low;
+                while (i < middle && j < high) {
+                    to[k++] = comparison.applyAsInt(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+                while (i < middle) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] sorted = to;
+            to = from;
+            from = sorted;
+        }
+        if (from != numbers)
+            System.arraycopy(from, 0, numbers, 0, numbers.length);
+    }
+
+    /**
+     * Returns the terms a record is found by: every non-empty identifier and the
+     * number part of a student ID.
+     */
+    private static ArrayList<String> termsOf(ClubberRecord record) {
+        ArrayList<String> result = new ArrayList<>(record.fieldCount() + 1);
+        for (int i = 0; i < record.fieldCount(); i++) {
+            addTerm(result, record.get(i));
+        }
+        for (String key : record.keys()) {
+            addTerm(result, key);
+        }
+        return result;
+    }
+
+    private static void addTerm(ArrayList<String> result, String value) {
+        String term = normalize(value);
+        if (!term.isEmpty() && !result.contains(term))
+            result.add(term);
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
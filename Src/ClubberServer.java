@@ -0,0 +1,415 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves a {@link ClubberRepository} over the network using the
+ * {@link ClubberProtocol}, so several door terminals share a single database.
+ * 
+ * A single thread runs every connection through a {@link Selector}. Reads are
+ * answered on that thread as soon as their frame is complete, as the
+ * repository's reads take no locks. Adds and commits wait for their journal
+ * entry to be forced to disk, so they are handed to a few worker threads, and
+ * their connection isn't read again until they are answered, which keeps the
+ * responses in the order of the requests. Responses that can't be written at
+ * once are kept until the connection is writable, and a connection with too
+ * much unsent data isn't read until the client catches up. A request that fails
+ * in an unexpected way is answered with {@link ClubberProtocol#ERROR}, and its
+ * connection closed once the answer is sent; the other clients are served on.
+ */
+public class ClubberServer implements Closeable {
+    // a connection isn't read while it has this much unsent data
+    private static final int MAX_PENDING = 4 * ClubberProtocol.MAX_FRAME;
+    // threads running adds and commits
+    private static final int WORKERS = 4;
+
+    /**
+     * The buffers of a single client.
+     */
+    private static class Connection {
+        // received bytes, in fill mode
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        // responses not sent yet, in fill mode
+        ByteBuffer out = ByteBuffer.allocate(4096);
+        // closed once the responses are sent, and not read any more
+        boolean closing;
+        // true while a worker answers a request of the connection
+        boolean busy;
+        // set by whoever answers a request that failed unexpectedly
+        boolean failed;
+    }
+
+    /**
+     * The response of a request answered by a worker, for the server's thread
+     * to send.
+     */
+    private static class Answer {
+        final SelectionKey key;
+        final byte[] response;
+
+        Answer(SelectionKey key, byte[] response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+    private final ClubberRepository clubbers;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final ExecutorService workers;
+    // answers of the workers, not sent yet
+    private final ConcurrentLinkedQueue<Answer> answers = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Opens the server socket. Clients are served once {@link #start()} is
+     * called.
+     * 
+     * @param clubbers the database to serve
+     * @param port     the port to listen on, 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public ClubberServer(ClubberRepository clubbers, int port) throws IOException {
+        this.clubbers = clubbers;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "Clubbers server");
+        workers = Executors.newFixedThreadPool(WORKERS, task -> {
+            Thread worker = new Thread(task, "Clubbers server worker");
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Starts serving clients on the server's thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the server, closes every connection and waits for the server's thread
+     * to end, and for the adds and commits it handed to the workers.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            if (thread.isAlive() && thread != Thread.currentThread())
+                thread.join();
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                sendAnswers();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable())
+                            accept();
+                        else
+                            serve(key);
+                    } catch (IOException | CancelledKeyException e) {
+                        // the client went away
+                        disconnect(key);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            workers.shutdown();
+            for (SelectionKey key : selector.keys()) {
+                disconnect(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues the answers of the workers, then goes on with the requests their
+     * connections sent meanwhile.
+     */
+    private void sendAnswers() {
+        Answer answer;
+        while ((answer = answers.poll()) != null) {
+            SelectionKey key = answer.key;
+            if (!key.isValid())
+                continue;
+            Connection connection = (Connection) key.attachment();
+            try {
+                connection.busy = false;
+                respond(connection, answer.response);
+                connection.closing |= connection.failed;
+                readFrames(key, connection);
+                send(key, connection);
+            } catch (IOException | CancelledKeyException e) {
+                disconnect(key);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                disconnect(key);
+            }
+        }
+    }
+
+    /**
+     * Reads what a client sent, answers every complete request and sends what it
+     * can of the responses.
+     */
+    private void serve(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        if (key.isReadable()) {
+            if (channel.read(connection.in) < 0) {
+                disconnect(key);
+                return;
+            }
+            readFrames(key, connection);
+        }
+        send(key, connection);
+    }
+
+    /**
+     * Sends what it can of a connection's responses, and tells the selector what
+     * the connection waits for.
+     */
+    private void send(SelectionKey key, Connection connection) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        connection.out.flip();
+        channel.write(connection.out);
+        connection.out.compact();
+        if (connection.closing && connection.out.position() == 0) {
+            disconnect(key);
+            return;
+        }
+
+        // wait for the client to read, or for a worker, before reading more requests
+        int ops = connection.out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+        if (connection.out.position() < MAX_PENDING && !connection.closing && !connection.busy)
+            ops |= SelectionKey.OP_READ;
+        key.interestOps(ops);
+    }
+
+    /**
+     * Answers every complete frame in the connection's input, up to an add or a
+     * commit, which is handed to a worker.
+     */
+    private void readFrames(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (!connection.closing && !connection.busy && in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > ClubberProtocol.MAX_FRAME)
+                throw new IOException("Bad frame length " + length);
+            if (in.remaining() < 4 + length)
+                break;
+
+            ByteBuffer request = in.slice(in.position() + 4, length);
+            in.position(in.position() + 4 + length);
+            byte op = request.get(0);
+            if (op == ClubberProtocol.ADD || op == ClubberProtocol.COMMIT) {
+                // the input buffer is reused, so the worker gets its own copy
+                ByteBuffer copy = ByteBuffer.allocate(length).put(request).flip();
+                connection.busy = true;
+                workers.execute(() -> {
+                    answers.add(new Answer(key, handle(connection, copy)));
+                    selector.wakeup();
+                });
+            } else {
+                respond(connection, handle(connection, request));
+                connection.closing |= connection.failed;
+            }
+        }
+        in.compact();
+
+        // make room for a frame longer than the buffer
+        if (in.position() >= 4) {
+            int needed = 4 + in.getInt(0);
+            if (needed > in.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(needed);
+                in.flip();
+                grown.put(in);
+                connection.in = grown;
+            }
+        }
+    }
+
+    /**
+     * Queues a response frame.
+     */
+    private void respond(Connection connection, byte[] response) {
+        ByteBuffer out = connection.out;
+        if (out.remaining() < 4 + response.length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + 4 + response.length));
+            out.flip();
+            grown.put(out);
+            connection.out = out = grown;
+        }
+        out.putInt(response.length);
+        out.put(response);
+    }
+
+    /**
+     * Answers a single request, on the server's thread or on a worker. A request
+     * that fails unexpectedly marks its connection as failed, to be closed.
+     * 
+     * @param connection the connection the request came from
+     * @param request    the request, without its length
+     * @return the response, without its length
+     */
+    private byte[] handle(Connection connection, ByteBuffer request) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            try {
+                byte op = request.get();
+                switch (op) {
+                    case ClubberProtocol.SIZE:
+                        out.writeByte(ClubberProtocol.OK);
+                        out.writeInt(clubbers.size());
+                        break;
+                    case ClubberProtocol.GET: {
+                        int ordinal = request.getInt();
+                        if (ordinal < 0 || ordinal >= clubbers.size()) {
+                            out.writeByte(ClubberProtocol.NOT_FOUND);
+                        } else {
+                            out.writeByte(ClubberProtocol.OK);
+                            ClubberProtocol.writeRecord(out, clubbers.get(ordinal));
+                        }
+                        break;
+                    }
+                    case ClubberProtocol.FIND: {
+                        ClubberRecord record = clubbers.find(ClubberProtocol.readString(request));
+                        if (record == null) {
+                            out.writeByte(ClubberProtocol.NOT_FOUND);
+                        } else {
+                            out.writeByte(ClubberProtocol.OK);
+                            ClubberProtocol.writeRecord(out, record);
+                        }
+                        break;
+                    }
+                    case ClubberProtocol.ADD: {
+                        ClubberRecord record = ClubberProtocol.readRecord(request);
+                        ClubberRecord holder = clubbers.add(record);
+                        if (holder == null) {
+                            out.writeByte(ClubberProtocol.OK);
+                            out.writeInt(record.getOrdinal());
+                        } else {
+                            out.writeByte(ClubberProtocol.CONFLICT);
+                            ClubberProtocol.writeRecord(out, holder);
+                        }
+                        break;
+                    }
+                    case ClubberProtocol.COMMIT: {
+                        ClubberRecord edited = ClubberProtocol.readRecord(request);
+                        if (edited.getOrdinal() < 0 || edited.getOrdinal() >= clubbers.size())
+                            throw new IOException("No record " + edited.getOrdinal());
+                        ClubberRecord holder = clubbers.commit(clubbers.get(edited.getOrdinal()), edited);
+                        if (holder == null) {
+                            out.writeByte(ClubberProtocol.OK);
+                        } else {
+                            out.writeByte(ClubberProtocol.CONFLICT);
+                            ClubberProtocol.writeRecord(out, holder);
+                        }
+                        break;
+                    }
+                    case ClubberProtocol.RECORDS:
+                        writeRecords(out, request.getInt(), request.getInt());
+                        break;
+                    default:
+                        throw new IOException("Unknown operation " + op);
+                }
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException | UncheckedIOException e) {
+                bytes.reset();
+                out.writeByte(ClubberProtocol.ERROR);
+                ClubberProtocol.writeString(out, String.valueOf(e.getMessage()));
+            } catch (RuntimeException e) {
+                // a bug, or a repository that can't serve the request, such as one not loaded
+                e.printStackTrace();
+                connection.failed = true;
+                bytes.reset();
+                out.writeByte(ClubberProtocol.ERROR);
+                ClubberProtocol.writeString(out, String.valueOf(e));
+            }
+        } catch (IOException e) {
+            // only the error message was too long to write
+            bytes.reset();
+            bytes.write(ClubberProtocol.ERROR);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a batch of records that aren't blank, starting at a number.
+     */
+    private void writeRecords(DataOutputStream out, int from, int max) throws IOException {
+        ArrayList<ClubberRecord> batch = new ArrayList<>();
+        int next = Math.max(from, 0);
+        int size = clubbers.size();
+        max = Math.min(max, ClubberProtocol.MAX_BATCH);
+        for (; next < size && batch.size() < max; next++) {
+            ClubberRecord record = clubbers.peek(next);
+            if (!record.isBlank())
+                batch.add(record);
+        }
+
+        out.writeByte(ClubberProtocol.OK);
+        out.writeInt(next < size ? next : -1);
+        out.writeInt(batch.size());
+        for (ClubberRecord record : batch) {
+            ClubberProtocol.writeRecord(out, record);
+        }
+    }
+}
@@ -0,0 +1,796 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The clubbers database. It holds the records of one or more
+ * {@link MappedClubberFile}s (the base, one file per segment of the DB) and the
+ * records added since it was opened, numbered one after the other: base
+ * records first, in segment order.
+ * 
+ * Base records are decoded only when they are first needed, by {@link #get} or
+ * by {@link #find} checking a candidate, and kept from then on so every caller
+ * gets the same {@link ClubberRecord} object. Opening a store therefore costs
+ * the same for any number of records, and memory grows with the records that
+ * were actually touched.
+ * 
+ * Keys are found through two indexes: the base files' own indexes, behind
+ * their {@link ClubberKeyFilter}s, and an index of the keys committed since the
+ * store was opened. An ID is only looked for in the base files of its bucket,
+ * when the DB is sharded (see {@link ClubberManifest}). A key in the latter
+ * wins; a base candidate is only returned if it still matches the key, so keys
+ * changed by a commit are not found under their old value. Committed keys are
+ * packed by {@link ClubberKey} and mapped to their record's number in
+ * {@link LongIntMap}s, one per stripe, so finding a key allocates nothing; the
+ * rare keys in no fixed format are kept in a {@link ConcurrentHashMap}.
+ * 
+ * The store is safe to use from many threads. Reads take no locks. Adds and
+ * commits lock the stripes of the keys they claim and release, out of a fixed
+ * set of locks picked by key hash, so the check for a taken key and the claim
+ * are a single step, while changes to unrelated keys go on in parallel. The
+ * map of a stripe is only changed under a {@link StampedLock} write lock, which
+ * readers check with an optimistic read and only wait on if it was taken. Added
+ * records are kept in fixed chunks that never move, so readers never see a
+ * half-grown array.
+ * 
+ * Records are versioned. Every add and commit is numbered by a clock, and a
+ * commit replaces the record's identifiers as a whole with a new version
+ * stamped with its number (see {@link ClubberRecord}), so a reader sees a
+ * record either before or after a commit, never in between. A
+ * {@link Snapshot} reads every record as it was at one point of the clock,
+ * without locks and without holding off commits: the versions it may need are
+ * kept until it is closed.
+ * 
+ * Every record knows its number ({@link ClubberRecord#getOrdinal}), and
+ * {@link Listener}s are told whenever the committed keys of a record are
+ * indexed or unindexed, so other indexes can follow commits. The numbers of
+ * committed records are also kept until {@link #takeChanges} is called, so a
+ * save only rewrites the segments that changed.
+ */
+public class ClubberStore implements ClubberRepository {
+    /**
+     * Follows the records of the store as they are indexed.
+     */
+    public interface Listener {
+        /**
+         * Called after a record's committed data was indexed: it was added or
+         * committed. Called while the record's keys are locked, possibly on any
+         * thread, so listeners must be thread safe and quick.
+         * 
+         * @param record the record
+         */
+        void indexed(ClubberRecord record);
+
+        /**
+         * Called before a record's committed data is replaced by a commit.
+         * 
+         * @param record the record, still holding its old data
+         */
+        void unindexed(ClubberRecord record);
+    }
+
+    // number of key locks
+    private static final int STRIPES = 64;
+    // added records are kept in chunks of this many records
+    private static final int CHUNK_SIZE = 4096;
+
+    // empty for a store that started empty
+    private final MappedClubberFile[] segments;
+    // segmentStarts[i] - the number of the first record of segments[i]
+    private final int[] segmentStarts;
+    // keyBuckets[i] - the bucket of the IDs in segments[i], -1 for any
+    private final int[] keyBuckets;
+    private final int baseCount;
+    // base records decoded so far, by number. null for the ones that weren't
+    private final AtomicReferenceArray<ClubberRecord> decoded;
+    // records added since the store was opened. record number baseCount + i is
+    // chunks[i / CHUNK_SIZE][i % CHUNK_SIZE]
+    private volatile ClubberRecord[][] chunks = new ClubberRecord[16][];
+    // written after the record it counts, so readers only see whole records
+    private volatile int addedCount;
+    private final Object appendLock = new Object();
+    // packed keys committed since the store was opened -> record number, by stripe
+    private final LongIntMap[] codeIndex = new LongIntMap[STRIPES];
+    // guards the maps of codeIndex against their readers
+    private final StampedLock[] codeGuards = new StampedLock[STRIPES];
+    // committed keys in no fixed format -> record
+    private final ConcurrentHashMap<String, ClubberRecord> otherKeys = new ConcurrentHashMap<>();
+    // a key is only claimed or released while the lock of its stripe is held
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    // numbers of the records committed since the last takeChanges
+    private final Set<Integer> changes = ConcurrentHashMap.newKeySet();
+    // numbers the adds and commits, for the versions of the records
+    private final AtomicLong clock = new AtomicLong();
+    // the snapshots that weren't closed yet
+    private final Set<Snapshot> snapshots = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates an empty store.
+     */
+    public ClubberStore() {
+        this(new MappedClubberFile[0]);
+    }
+
+    /**
+     * Creates a store over the records of a mapped file.
+     * 
+     * @param base the mapped file, or null for an empty store
+     */
+    public ClubberStore(MappedClubberFile base) {
+        this(base == null ? new MappedClubberFile[0] : new MappedClubberFile[] { base });
+    }
+
+    /**
+     * Creates a store over the records of the mapped segments of a DB, in order.
+     * 
+     * @param segments the mapped segment files
+     */
+    public ClubberStore(MappedClubberFile[] segments) {
+        this(segments, null);
+    }
+
+    /**
+     * Creates a store over the records of the mapped segments of a sharded DB,
+     * in order.
+     * 
+     * @param segments   the mapped segment files
+     * @param keyBuckets the bucket of the IDs each segment holds, -1 for one
+     *                   that may hold any, see
+     *                   {@link ClubberManifest#getKeyBuckets}. null if any
+     *                   segment may hold any ID
+     */
+    public ClubberStore(MappedClubberFile[] segments, int[] keyBuckets) {
+        this.segments = segments;
+        if (keyBuckets == null) {
+            keyBuckets = new int[segments.length];
+            Arrays.fill(keyBuckets, -1);
+        }
+        this.keyBuckets = keyBuckets;
+        segmentStarts = new int[segments.length];
+        int count = 0;
+        for (int i = 0; i < segments.length; i++) {
+            segmentStarts[i] = count;
+            count += segments[i].getCount();
+        }
+        baseCount = count;
+        decoded = new AtomicReferenceArray<>(count);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+            codeIndex[i] = new LongIntMap();
+            codeGuards[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Opens the given database file. Files with an index are mapped; older files
+     * are read whole into the added records.
+     * 
+     * @param path the database file
+     * @return a store holding the file's records
+     * @throws NoSuchFileException if the file does not exist
+     * @throws IOException         if the file can't be read
+     */
+    public static ClubberStore open(Path path) throws IOException {
+        MappedClubberFile mapped;
+        try {
+            mapped = new MappedClubberFile(path);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException e) {
+            // no index, read it the slow way
+            ClubberStore store = new ClubberStore();
+            for (ClubberRecord record : ClubberFileReader.readFile(path)) {
+                store.restore(record);
+            }
+            return store;
+        }
+        return new ClubberStore(mapped);
+    }
+
+    @Override
+    public int size() {
+        return baseCount + addedCount;
+    }
+
+    /**
+     * Returns a record by its number, decoding it if it's a base record that
+     * wasn't needed before. Threads asking for the same record at once all get
+     * the same object.
+     * 
+     * @param ordinal the number of the record, from 0 to {@link #size()}
+     * @return the record
+     * @throws UncheckedIOException if the base record is corrupt
+     */
+    @Override
+    public ClubberRecord get(int ordinal) {
+        if (ordinal >= baseCount)
+            return added(ordinal - baseCount);
+
+        ClubberRecord record = decoded.get(ordinal);
+        if (record != null)
+            return record;
+        // a thread that decoded it at the same time may have been first
+        record = load(ordinal);
+        return decoded.compareAndSet(ordinal, null, record) ? record : decoded.get(ordinal);
+    }
+
+    /**
+     * Returns a record by its number without keeping it: base records that were
+     * not decoded before are decoded into a new object every time. Used to go
+     * over many records once.
+     * 
+     * @param ordinal the number of the record, from 0 to {@link #size()}
+     * @return the record
+     * @throws UncheckedIOException if the base record is corrupt
+     */
+    @Override
+    public ClubberRecord peek(int ordinal) {
+        if (ordinal >= baseCount)
+            return added(ordinal - baseCount);
+
+        ClubberRecord record = decoded.get(ordinal);
+        return record != null ? record : load(ordinal);
+    }
+
+    /**
+     * Returns an added record.
+     */
+    private ClubberRecord added(int i) {
+        // read the count before the chunks, see append
+        if (i >= addedCount)
+            throw new IndexOutOfBoundsException("Record " + (baseCount + i) + " of " + size());
+        return chunks[i / CHUNK_SIZE][i % CHUNK_SIZE];
+    }
+
+    /**
+     * Decodes a base record.
+     */
+    private ClubberRecord load(int ordinal) {
+        try {
+            // the last segment starting at or before the record
+            int segment = Arrays.binarySearch(segmentStarts, ordinal);
+            if (segment < 0)
+                segment = -segment - 2;
+            // empty segments start where the next one does
+            while (segment + 1 < segments.length && segmentStarts[segment + 1] == ordinal) {
+                segment++;
+            }
+            ClubberRecord record = segments[segment].decode(ordinal - segmentStarts[segment]);
+            record.setOrdinal(ordinal);
+            record.publish(0);
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ClubberRecord find(String key) {
+        if (key.isEmpty())
+            return null;
+
+        long code = ClubberKey.encode(key);
+        ClubberRecord record = findCommitted(key, code);
+        if (record != null)
+            return record;
+
+        // candidates from the base indexes, which may have changed since
+        int hash = key.hashCode();
+        int bucket = ClubberKey.isId(code) ? ClubberManifest.bucketOf(code) : -1;
+        for (int i = 0; i < segments.length; i++) {
+            if (bucket >= 0 && keyBuckets[i] >= 0 && keyBuckets[i] != bucket)
+                continue;
+            MappedClubberFile segment = segments[i];
+            int slot = segment.findKey(hash);
+            if (slot < 0)
+                continue;
+            for (; slot < segment.getKeyCount() && segment.keyHash(slot) == hash; slot++) {
+                ClubberRecord candidate = get(segmentStarts[i] + segment.keyOrdinal(slot));
+                if (candidate.match(key))
+                    return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a key in the index of committed keys.
+     */
+    private ClubberRecord findCommitted(String key, long code) {
+        if (code == ClubberKey.NONE)
+            return otherKeys.get(key);
+
+        int stripe = stripe(key, code);
+        LongIntMap map = codeIndex[stripe];
+        StampedLock guard = codeGuards[stripe];
+        long stamp = guard.tryOptimisticRead();
+        int ordinal = map.get(code);
+        if (!guard.validate(stamp)) {
+            stamp = guard.readLock();
+            try {
+                ordinal = map.get(code);
+            } finally {
+                guard.unlockRead(stamp);
+            }
+        }
+        return ordinal == LongIntMap.MISSING ? null : get(ordinal);
+    }
+
+    /**
+     * Picks the stripe of a key: by its code if it has one, otherwise by its
+     * string hash.
+     */
+    private static int stripe(String key, long code) {
+        if (code == ClubberKey.NONE)
+            return Math.floorMod(key.hashCode(), STRIPES);
+        // the maps pick slots by the low bits of the same hash
+        return ClubberKey.hash(code) >>> (32 - 6);
+    }
+
+    @Override
+    public ClubberRecord add(ClubberRecord record) {
+        String[] keys = record.keys();
+        int[] locked = lock(keys, keys);
+        try {
+            ClubberRecord holder = holder(keys, record);
+            if (holder != null)
+                return holder;
+
+            append(record);
+            claim(keys, record);
+            notifyIndexed(record);
+            return null;
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    /**
+     * Adds a record without checking its keys, which are taken from any record
+     * holding them. Used for records that were checked before, when they are
+     * read back from a file or a journal.
+     * 
+     * @param record the record to add
+     */
+    public void restore(ClubberRecord record) {
+        String[] keys = record.keys();
+        int[] locked = lock(keys, keys);
+        try {
+            append(record);
+            claim(keys, record);
+            notifyIndexed(record);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public ClubberRecord commit(ClubberRecord record, ClubberRecord edited) {
+        return update(record, edited, true);
+    }
+
+    /**
+     * Commits an edited copy into a record without checking its new keys, which
+     * are taken from any record holding them. Used to replay commits that were
+     * checked before, possibly in a different order than they were made in.
+     * 
+     * @param record the record to update, already in the store
+     * @param edited the new data of the record, of the same type
+     */
+    public void restore(ClubberRecord record, ClubberRecord edited) {
+        update(record, edited, false);
+    }
+
+    /**
+     * Replaces the identifiers of a record and moves its keys, with the old and
+     * new keys locked. Commits of the same record are serialized on the record.
+     */
+    private ClubberRecord update(ClubberRecord record, ClubberRecord edited, boolean check) {
+        if (edited.getType() != record.getType())
+            throw new IllegalArgumentException(
+                    "Can't commit a " + edited.getClubberType() + " into a " + record.getClubberType());
+
+        synchronized (record) {
+            String[] oldKeys = record.keys();
+            String[] newKeys = edited.keys();
+            int[] locked = lock(oldKeys, newKeys);
+            try {
+                if (check) {
+                    ClubberRecord holder = holder(newKeys, record);
+                    if (holder != null)
+                        return holder;
+                }
+
+                for (Listener listener : listeners) {
+                    listener.unindexed(record);
+                }
+                release(oldKeys, record);
+                // readers see the new version as a whole, snapshots once it's
+                // numbered, right after
+                record.replace(edited, ClubberRecord.PENDING);
+                record.stamp(clock.incrementAndGet(), oldestSnapshot());
+                changes.add(record.getOrdinal());
+                claim(newKeys, record);
+                notifyIndexed(record);
+                return null;
+            } finally {
+                unlock(locked);
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the added records and numbers it.
+     */
+    private void append(ClubberRecord record) {
+        synchronized (appendLock) {
+            int i = addedCount;
+            record.setOrdinal(baseCount + i);
+            record.publish(ClubberRecord.PENDING);
+
+            int chunk = i / CHUNK_SIZE;
+            if (i % CHUNK_SIZE == 0) {
+                ClubberRecord[][] grown = chunks;
+                if (chunk == grown.length)
+                    grown = Arrays.copyOf(grown, chunk * 2);
+                grown[chunk] = new ClubberRecord[CHUNK_SIZE];
+                chunks = grown;
+            }
+            chunks[chunk][i % CHUNK_SIZE] = record;
+            // publishes the record to readers that read the count first
+            addedCount = i + 1;
+        }
+        record.stamp(clock.incrementAndGet(), oldestSnapshot());
+    }
+
+    /**
+     * Returns the record, other than the given one, that holds one of the keys.
+     * The keys must be locked.
+     */
+    private ClubberRecord holder(String[] keys, ClubberRecord record) {
+        for (String key : keys) {
+            ClubberRecord holder = find(key);
+            if (holder != null && holder != record)
+                return holder;
+        }
+        return null;
+    }
+
+    /**
+     * Puts the non-empty keys of a record into the key index. The keys must be
+     * locked.
+     */
+    private void claim(String[] keys, ClubberRecord record) {
+        for (String key : keys) {
+            if (key.isEmpty())
+                continue;
+            long code = ClubberKey.encode(key);
+            if (code == ClubberKey.NONE) {
+                otherKeys.put(key, record);
+                continue;
+            }
+            int stripe = stripe(key, code);
+            long stamp = codeGuards[stripe].writeLock();
+            try {
+                codeIndex[stripe].put(code, record.getOrdinal());
+            } finally {
+                codeGuards[stripe].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Takes the keys of a record out of the key index, unless another record
+     * claimed them since. The keys must be locked.
+     */
+    private void release(String[] keys, ClubberRecord record) {
+        for (String key : keys) {
+            if (key.isEmpty())
+                continue;
+            long code = ClubberKey.encode(key);
+            if (code == ClubberKey.NONE) {
+                otherKeys.remove(key, record);
+                continue;
+            }
+            int stripe = stripe(key, code);
+            long stamp = codeGuards[stripe].writeLock();
+            try {
+                codeIndex[stripe].remove(code, record.getOrdinal());
+            } finally {
+                codeGuards[stripe].unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void notifyIndexed(ClubberRecord record) {
+        for (Listener listener : listeners) {
+            listener.indexed(record);
+        }
+    }
+
+    /**
+     * Locks the stripes of the non-empty keys of both arrays, in stripe order so
+     * threads locking overlapping stripes can't deadlock.
+     * 
+     * @return the locked stripes, for {@link #unlock}
+     */
+    private int[] lock(String[] keys, String[] moreKeys) {
+        int[] locked = new int[keys.length + moreKeys.length];
+        int count = 0;
+        for (String[] array : new String[][] { keys, moreKeys }) {
+            for (String key : array) {
+                if (!key.isEmpty())
+                    locked[count++] = stripe(key, ClubberKey.encode(key));
+            }
+        }
+        Arrays.sort(locked, 0, count);
+
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || locked[unique - 1] != locked[i])
+                locked[unique++] = locked[i];
+        }
+        locked = Arrays.copyOf(locked, unique);
+        for (int stripe : locked) {
+            stripes[stripe].lock();
+        }
+        return locked;
+    }
+
+    private void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+
+    /**
+     * Registers a listener to be told about records being indexed.
+     * 
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Takes a snapshot of the store: its records as they are now, which don't
+     * change when records are added or committed. Taking it costs the same for
+     * any number of records, and commits go on while it is read. It must be
+     * closed once read, so the versions it holds on to can be dropped.
+     * 
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * @return the stamp of the oldest open snapshot, or
+     *         {@link ClubberRecord#PENDING} if there is none
+     */
+    private long oldestSnapshot() {
+        if (snapshots.isEmpty())
+            return ClubberRecord.PENDING;
+        long oldest = ClubberRecord.PENDING;
+        for (Snapshot snapshot : snapshots) {
+            oldest = Math.min(oldest, snapshot.floor);
+        }
+        return oldest;
+    }
+
+    /**
+     * The records of the store as they were when it was taken. Records added
+     * since are left out, as blank records, and committed records are read as
+     * they were before the commit. Base records are decoded into new objects,
+     * as by {@link ClubberStore#peek}. Safe to use from many threads.
+     */
+    public class Snapshot implements Iterable<ClubberRecord>, AutoCloseable {
+        // no older than stamp, it keeps the versions commits check against
+        private final long floor;
+        // the records read are the ones as of this commit
+        private final long stamp;
+        private final int size;
+
+        private Snapshot() {
+            // a commit numbered after floor but before it sees the snapshot
+            // registered keeps nothing for it, so the snapshot reads the clock
+            // again once registered: no such commit is older than stamp
+            floor = clock.get();
+            snapshots.add(this);
+            stamp = clock.get();
+            size = ClubberStore.this.size();
+        }
+
+        /**
+         * @return the number of the last commit the snapshot holds.
+         */
+        public long getStamp() {
+            return stamp;
+        }
+
+        /**
+         * @return the number of records, blank ones included.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns a record as it was when the snapshot was taken, read only.
+         * 
+         * @param ordinal the number of the record, from 0 to {@link #size()}
+         * @return the record, blank if it was added after the snapshot was taken
+         * @throws UncheckedIOException if the base record is corrupt
+         */
+        public ClubberRecord peek(int ordinal) {
+            if (ordinal < 0 || ordinal >= size)
+                throw new IndexOutOfBoundsException("Record " + ordinal + " of " + size);
+            ClubberRecord record = ClubberStore.this.peek(ordinal);
+            ClubberRecord then = record.at(stamp);
+            if (then != null)
+                return then;
+            ClubberRecord blank = ClubberRecord.blank(record.getType());
+            blank.setOrdinal(ordinal);
+            return blank;
+        }
+
+        /**
+         * Iterates over every record of the snapshot that isn't blank, in order.
+         */
+        @Override
+        public Iterator<ClubberRecord> iterator() {
+            return new Iterator<ClubberRecord>() {
+                private int next = -1;
+                private ClubberRecord record = advance();
+
+                private ClubberRecord advance() {
+                    while (++next < size) {
+                        ClubberRecord candidate = peek(next);
+                        if (!candidate.isBlank())
+                            return candidate;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return record != null;
+                }
+
+                @Override
+                public ClubberRecord next() {
+                    if (record == null)
+                        throw new NoSuchElementException();
+                    ClubberRecord current = record;
+                    record = advance();
+                    return current;
+                }
+            };
+        }
+
+        /**
+         * Releases the snapshot. The versions only it needed are dropped by the
+         * next commits of their records.
+         */
+        @Override
+        public void close() {
+            snapshots.remove(this);
+        }
+    }
+
+    /**
+     * Removes a record by blanking it: its keys are unindexed and it is left out
+     * of {@link #records()} and of the next save. Its number stays taken.
+     * 
+     * @param record the record to remove
+     */
+    public void remove(ClubberRecord record) {
+        update(record, ClubberRecord.blank(record.getType()), false);
+    }
+
+    /**
+     * @return true if a record was committed since the last
+     *         {@link #takeChanges}.
+     */
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Takes the numbers of the records committed since the last call, which are
+     * forgotten by the store. A save that fails must put them back with
+     * {@link #putChanges}.
+     * 
+     * @return the numbers of the committed records
+     */
+    public BitSet takeChanges() {
+        BitSet taken = new BitSet(size());
+        for (Iterator<Integer> i = changes.iterator(); i.hasNext();) {
+            taken.set(i.next());
+            i.remove();
+        }
+        return taken;
+    }
+
+    /**
+     * Puts back changes taken by {@link #takeChanges}, that weren't saved.
+     * 
+     * @param taken the numbers of the committed records
+     */
+    public void putChanges(BitSet taken) {
+        taken.stream().forEach(changes::add);
+    }
+
+    /**
+     * Iterates over every record that isn't blank, in order. Base records that
+     * were never decoded are decoded for the iteration only, and not kept.
+     * Records committed during the iteration are seen as they are when reached;
+     * a {@link Snapshot} sees them all as of one moment.
+     * 
+     * @return the committed records of the store
+     */
+    public Iterable<ClubberRecord> records() {
+        return () -> new Iterator<ClubberRecord>() {
+            private int next = -1;
+            private ClubberRecord record = advance();
+
+            private ClubberRecord advance() {
+                while (++next < size()) {
+                    ClubberRecord candidate = peek(next);
+                    if (!candidate.isBlank())
+                        return candidate;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return record != null;
+            }
+
+            @Override
+            public ClubberRecord next() {
+                if (record == null)
+                    throw new NoSuchElementException();
+                ClubberRecord current = record;
+                record = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Writes every record that isn't blank into the given file.
+     * 
+     * @param path the file to write
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Path path) throws IOException {
+        writeTo(path, null);
+    }
+
+    /**
+     * Writes every record that isn't blank into the given file, telling the
+     * progress. If the progress cancels the write, the old file is left as it
+     * was.
+     * 
+     * @param path     the file to write
+     * @param progress told every few thousand records, may be null
+     * @throws IOException                                  if writing fails
+     * @throws java.util.concurrent.CancellationException if the write was
+     *                                                      cancelled
+     */
+    public void writeTo(Path path, ClubberProgress progress) throws IOException {
+        try (Snapshot snapshot = snapshot()) {
+            ClubberFileWriter.writeFile(path, snapshot, snapshot.size(), progress);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
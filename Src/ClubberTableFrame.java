@@ -0,0 +1,159 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.table.*;
+
+/**
+ * A {@link JFrame} to browse every clubber in a table. The table is backed by
+ * a {@link ClubberTableModel}, which only fetches the rows on screen. Clicking
+ * a column header sorts by it (clicking again reverses the order), and the
+ * fields at the top filter the rows by type and by the beginning of a column.
+ * Double clicking a clubber (or pressing Enter) opens it.
+ */
+public class ClubberTableFrame extends JFrame {
+    private final ClubberTableModel model;
+    private final JTable table;
+    private final JComboBox<String> typeChoice = new JComboBox<>(typeChoices());
+    private final JComboBox<String> columnChoice = new JComboBox<>(ClubberTableModel.COLUMNS);
+    private final JTextField filterField = new JTextField(15);
+    private final JLabel status = new JLabel(" ");
+
+    /**
+     * Creates the frame.
+     * 
+     * @param store  the database to show
+     * @param opener called with the clubber the user chose to open
+     */
+    public ClubberTableFrame(ClubberStore store, Consumer<ClubberRecord> opener) {
+        model = new ClubberTableModel(store);
+        table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setFillsViewportHeight(true);
+        // the model sorts, a row sorter would fetch every row
+        table.setAutoCreateRowSorter(false);
+        table.getColumnModel().getColumn(0).setPreferredWidth(60);
+        for (int i = 5; i < ClubberTableModel.COLUMNS.length; i++) {
+            table.getColumnModel().getColumn(i).setPreferredWidth(160);
+        }
+
+        // sort by the clicked column
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column < 0)
+                    return;
+                column = table.convertColumnIndexToModel(column);
+                model.sortBy(column, column != model.getSortColumn() || !model.isAscending());
+                updateHeader();
+            }
+        });
+
+        // filter on every change
+        ActionListener filterChanged = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                filter();
+            }
+        };
+        typeChoice.addActionListener(filterChanged);
+        columnChoice.addActionListener(filterChanged);
+        columnChoice.setSelectedIndex(3);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                filter();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                filter();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                filter();
+            }
+        });
+
+        // open the chosen clubber
+        table.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row >= 0)
+                    opener.accept(model.getClubber(row));
+            }
+        });
+        table.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "open");
+        table.getActionMap().put("open", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                int row = table.getSelectedRow();
+                if (row >= 0)
+                    opener.accept(model.getClubber(row));
+            }
+        });
+
+        model.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                updateStatus();
+            }
+        });
+        model.setOnBusy(this::updateStatus);
+
+        JPanel top = new JPanel();
+        top.add(typeChoice);
+        top.add(columnChoice);
+        top.add(new JLabel("starts with"));
+        top.add(filterField);
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(table));
+        add(status, BorderLayout.SOUTH);
+        updateStatus();
+        setTitle("Members");
+        setSize(760, 500);
+        setLocationRelativeTo(null);
+    }
+
+    /**
+     * @return "All types" and the names of the registered types, by number.
+     */
+    private static String[] typeChoices() {
+        String[] names = ClubberType.names();
+        String[] choices = new String[names.length + 1];
+        choices[0] = "All types";
+        System.arraycopy(names, 0, choices, 1, names.length);
+        return choices;
+    }
+
+    /**
+     * Filters the rows by the chosen type, column and text.
+     */
+    private void filter() {
+        model.filter(typeChoice.getSelectedIndex() - 1, columnChoice.getSelectedIndex(), filterField.getText());
+    }
+
+    /**
+     * Marks the sorted column's header with the direction of the sort.
+     */
+    private void updateHeader() {
+        TableColumnModel columns = table.getColumnModel();
+        for (int i = 0; i < columns.getColumnCount(); i++) {
+            TableColumn column = columns.getColumn(i);
+            int index = column.getModelIndex();
+            String name = ClubberTableModel.COLUMNS[index];
+            if (index == model.getSortColumn())
+                name += model.isAscending() ? " \u25B2" : " \u25BC";
+            column.setHeaderValue(name);
+        }
+        table.getTableHeader().repaint();
+    }
+
+    private void updateStatus() {
+        if (model.isBusy()) {
+            status.setText("Indexing clubbers...");
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            return;
+        }
+        status.setText(model.getRowCount() + " of " + model.getClubberCount() + " clubbers");
+        setCursor(Cursor.getDefaultCursor());
+    }
+}
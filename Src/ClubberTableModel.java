@@ -0,0 +1,568 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A lazy {@link javax.swing.table.TableModel} of every clubber in a
+ * {@link ClubberStore}, one row per clubber. The model holds only the numbers
+ * of the rows it shows, in order; a row's record is fetched from the store when
+ * the table paints it, and kept in a small cache, so scrolling through a
+ * million rows only ever decodes the rows on screen.
+ * 
+ * Rows are sorted by any column and filtered by type and by the beginning of
+ * any column, ignoring case, through sort indexes: for each column, the
+ * numbers of all the records ordered by that column's value. An index is built
+ * the first time its column is sorted or filtered by, on a background thread,
+ * and kept up to date with commits from then on, so sorting and filtering
+ * again is a walk over the index rather than a sort. An index is kept in
+ * blocks, so a commit moves its record by shifting a block or two instead of
+ * the whole index.
+ * 
+ * The model follows the store as a {@link ClubberStore.Listener}. Changes may
+ * come from any thread, and are applied on the event dispatch thread, which
+ * the model is used from otherwise.
+ */
+public class ClubberTableModel extends AbstractTableModel implements ClubberStore.Listener {
+    // the type and every identifier, named as the registered types name them
+    public static final String[] COLUMNS = columns();
+    // the type of a blank record, which isn't shown
+    private static final byte BLANK = -1;
+    // records fetched for painting, by number modulo the size
+    private static final int CACHE_SIZE = 1024;
+    // more changes at once than this, as by an import, drop the indexes, which
+    // are rebuilt rather than updated one record at a time
+    private static final int MAX_UPDATES = 256;
+
+    private final ClubberStore store;
+    // the type of every record, BLANK for blank ones. null until scanned
+    private byte[] types;
+    // the number of records scanned into types
+    private int known;
+    // the number of records scanned that aren't blank
+    private int clubberCount;
+    // sortIndexes[column] - the numbers of the shown records, ordered by the
+    // column's value. null until built
+    private final SortIndex[] sortIndexes = new SortIndex[COLUMNS.length];
+    // numbers of the records shown, by row
+    private int[] rows = new int[0];
+    private int rowCount;
+
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private int typeFilter = -1;
+    private int filterColumn = 3;
+    private String filterText = "";
+
+    private final ClubberRecord[] cache = new ClubberRecord[CACHE_SIZE];
+    private final int[] cached = new int[CACHE_SIZE];
+
+    // records changed by other threads, waiting for the event dispatch thread
+    private final ConcurrentLinkedQueue<Integer> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+    // records changed while an index was being built, applied to it once built
+    private ArrayList<Integer> changedDuringBuild;
+    private SwingWorker<?, ?> worker;
+    private Runnable onBusy = () -> {
+    };
+
+    /**
+     * Creates the model and starts scanning the store in the background; the
+     * model is empty until the scan is done.
+     * 
+     * @param store the database to show
+     */
+    public ClubberTableModel(ClubberStore store) {
+        this.store = store;
+        Arrays.fill(cached, -1);
+        store.addListener(this);
+
+        int count = store.size();
+        build(() -> {
+            byte[] scanned = new byte[Math.max(count, 16)];
+            for (int i = 0; i < count; i++) {
+                ClubberRecord record = store.peek(i);
+                scanned[i] = record.isBlank() ? BLANK : (byte) record.getType();
+            }
+            return scanned;
+        }, scanned -> {
+            types = scanned;
+            known = count;
+            for (int i = 0; i < count; i++) {
+                if (scanned[i] != BLANK)
+                    clubberCount++;
+            }
+            // records added while scanning
+            for (int i = known; i < store.size(); i++) {
+                apply(i);
+            }
+        });
+    }
+
+    /**
+     * Sets a task to run whenever the model starts or stops working in the
+     * background, to show it is busy.
+     * 
+     * @param onBusy the task, run on the event dispatch thread
+     */
+    public void setOnBusy(Runnable onBusy) {
+        this.onBusy = onBusy;
+    }
+
+    /**
+     * @return true while an index is being built.
+     */
+    public boolean isBusy() {
+        return worker != null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return valueOf(record(rows[row]), column);
+    }
+
+    /**
+     * Returns the clubber shown in a row.
+     * 
+     * @param row the row
+     * @return the clubber, as kept by the store
+     */
+    public ClubberRecord getClubber(int row) {
+        return store.get(rows[row]);
+    }
+
+    /**
+     * @return the number of clubbers in the store, shown or not.
+     */
+    public int getClubberCount() {
+        return clubberCount;
+    }
+
+    /**
+     * Sorts the rows by a column, or by the order the clubbers were added in.
+     * 
+     * @param column    the column, -1 for the order of addition
+     * @param ascending false to reverse the order
+     */
+    public void sortBy(int column, boolean ascending) {
+        sortColumn = column;
+        this.ascending = ascending;
+        refresh();
+    }
+
+    /**
+     * @return the column sorted by, -1 for none.
+     */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    /**
+     * @return true if the sort is ascending.
+     */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * Shows only the clubbers of a type whose value in a column starts with a
+     * text, ignoring case.
+     * 
+     * @param type   the type, -1 for any type
+     * @param column the column the text is matched against
+     * @param text   the beginning of the value, empty for any value
+     */
+    public void filter(int type, int column, String text) {
+        typeFilter = type;
+        filterColumn = column;
+        filterText = text.trim();
+        refresh();
+    }
+
+    private static String[] columns() {
+        String[] columns = new String[1 + ClubberType.maxFieldCount()];
+        columns[0] = "Type";
+        for (int i = 1; i < columns.length; i++) {
+            columns[i] = ClubberType.fieldTitle(i - 1);
+        }
+        return columns;
+    }
+
+    /**
+     * @return the value of a column of a clubber.
+     */
+    private static String valueOf(ClubberRecord record, int column) {
+        if (column == 0)
+            return record.getClubberType().getName();
+        int field = column - 1;
+        return field < record.fieldCount() ? record.get(field) : "";
+    }
+
+    /**
+     * Fetches a record to show, through the cache. The record isn't kept by the
+     * store if it wasn't decoded before.
+     */
+    private ClubberRecord record(int ordinal) {
+        int slot = ordinal % CACHE_SIZE;
+        if (cached[slot] != ordinal) {
+            cache[slot] = store.peek(ordinal);
+            cached[slot] = ordinal;
+        }
+        return cache[slot];
+    }
+
+    /**
+     * Computes the rows from the indexes, building the missing ones first.
+     */
+    private void refresh() {
+        if (types == null || worker != null)
+            return;
+        if (sortColumn >= 0 && sortIndexes[sortColumn] == null) {
+            buildIndex(sortColumn);
+            return;
+        }
+        boolean filtering = !filterText.isEmpty();
+        if (filtering && sortIndexes[filterColumn] == null) {
+            buildIndex(filterColumn);
+            return;
+        }
+
+        // the records whose filter column starts with the text are a range of
+        // its index
+        int[] order = sortColumn >= 0 ? sortIndexes[sortColumn].toArray() : null;
+        int from = 0, to = order != null ? order.length : known;
+        BitSet matching = null;
+        if (filtering) {
+            int[] index = filterColumn == sortColumn ? order : sortIndexes[filterColumn].toArray();
+            int low = bound(index, filterColumn, false);
+            int high = bound(index, filterColumn, true);
+            if (filterColumn == sortColumn) {
+                from = low;
+                to = high;
+            } else {
+                matching = new BitSet(known);
+                for (int i = low; i < high; i++) {
+                    matching.set(index[i]);
+                }
+            }
+        }
+
+        int[] shown = new int[to - from];
+        int count = 0;
+        for (int i = 0; i < to - from; i++) {
+            int position = ascending ? from + i : to - 1 - i;
+            int ordinal = order != null ? order[position] : position;
+            byte type = types[ordinal];
+            if (type != BLANK && (typeFilter < 0 || type == typeFilter)
+                    && (matching == null || matching.get(ordinal)))
+                shown[count++] = ordinal;
+        }
+        rows = shown;
+        rowCount = count;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Binary searches the index of a column for the first record whose value
+     * starts with the filter text (or comes after it, if after is true).
+     */
+    private int bound(int[] index, int column, boolean after) {
+        int low = 0, high = index.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int compared = comparePrefix(valueOf(record(index[middle]), column), filterText);
+            if (compared < 0 || (after && compared == 0))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Compares the beginning of a value, as long as the prefix, to the prefix.
+     */
+    private static int comparePrefix(String value, String prefix) {
+        if (value.length() > prefix.length())
+            value = value.substring(0, prefix.length());
+        return String.CASE_INSENSITIVE_ORDER.compare(value, prefix);
+    }
+
+    /**
+     * Compares two records by a column, then by number so no two are equal.
+     */
+    private static int compare(String value, int ordinal, String otherValue, int otherOrdinal) {
+        int compared = String.CASE_INSENSITIVE_ORDER.compare(value, otherValue);
+        return compared != 0 ? compared : Integer.compare(ordinal, otherOrdinal);
+    }
+
+    /**
+     * Builds the sort index of a column in the background, then refreshes the
+     * rows.
+     */
+    private void buildIndex(int column) {
+        int count = known;
+        byte[] scanned = types;
+        build(() -> {
+            // fetch every value once, then sort the numbers by them
+            String[] values = new String[count];
+            Integer[] order = new Integer[count];
+            int shown = 0;
+            for (int i = 0; i < count; i++) {
+                if (scanned[i] != BLANK) {
+                    values[i] = valueOf(store.peek(i), column);
+                    order[shown++] = i;
+                }
+            }
+            Arrays.parallelSort(order, 0, shown, (a, b) -> compare(values[a], a, values[b], b));
+
+            int[] index = new int[shown];
+            for (int i = 0; i < shown; i++) {
+                index[i] = order[i];
+            }
+            return new SortIndex(index, count);
+        }, index -> sortIndexes[column] = index);
+    }
+
+    /**
+     * Runs a task in the background and hands its result over on the event
+     * dispatch thread, where the records changed meanwhile are applied to it.
+     */
+    private <T> void build(Callable<T> task, Consumer<T> done) {
+        changedDuringBuild = new ArrayList<>();
+        worker = new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return task.call();
+            }
+
+            @Override
+            protected void done() {
+                worker = null;
+                ArrayList<Integer> changed = changedDuringBuild;
+                changedDuringBuild = null;
+                try {
+                    done.accept(get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                applyAll(changed);
+                onBusy.run();
+                refresh();
+            }
+        };
+        onBusy.run();
+        worker.execute();
+    }
+
+    @Override
+    public void indexed(ClubberRecord record) {
+        changes.add(record.getOrdinal());
+        if (drainPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                drainPending.set(false);
+                ArrayList<Integer> changed = new ArrayList<>();
+                Integer ordinal;
+                while ((ordinal = changes.poll()) != null) {
+                    changed.add(ordinal);
+                }
+                applyAll(changed);
+                refresh();
+            });
+        }
+    }
+
+    @Override
+    public void unindexed(ClubberRecord record) {
+        // the record is moved in the indexes once it's indexed again
+    }
+
+    /**
+     * Applies changed records, dropping the indexes if there are too many to
+     * update one by one.
+     */
+    private void applyAll(ArrayList<Integer> changed) {
+        if (changed.size() > MAX_UPDATES)
+            Arrays.fill(sortIndexes, null);
+        for (int ordinal : changed) {
+            apply(ordinal);
+        }
+    }
+
+    /**
+     * Applies an added or committed record to the types and the built
+     * indexes: it is taken out of each index and put back by its new value.
+     */
+    private void apply(int ordinal) {
+        if (changedDuringBuild != null)
+            changedDuringBuild.add(ordinal);
+        if (types == null)
+            return;
+
+        cached[ordinal % CACHE_SIZE] = -1;
+        ClubberRecord record = record(ordinal);
+        if (ordinal >= types.length)
+            types = Arrays.copyOf(types, Math.max(ordinal + 1, types.length * 2));
+        byte wasType = ordinal < known ? types[ordinal] : BLANK;
+        known = Math.max(known, ordinal + 1);
+        types[ordinal] = record.isBlank() ? BLANK : (byte) record.getType();
+        if (wasType == BLANK && types[ordinal] != BLANK)
+            clubberCount++;
+        else if (wasType != BLANK && types[ordinal] == BLANK)
+            clubberCount--;
+
+        for (int column = 0; column < COLUMNS.length; column++) {
+            SortIndex index = sortIndexes[column];
+            if (index == null)
+                continue;
+            index.remove(ordinal);
+            if (types[ordinal] != BLANK) {
+                int by = column;
+                String value = valueOf(record, column);
+                index.insert(ordinal, other -> compare(valueOf(record(other), by), other, value, ordinal) < 0);
+            }
+        }
+    }
+
+    /**
+     * The numbers of records in the order of a column, kept in blocks of up to
+     * twice {@link #BLOCK_SIZE} numbers. Every record knows its block, so it's
+     * taken out by shifting the rest of that block only, and put in by a binary
+     * search over the blocks and then within one, shifting the rest of it. A
+     * full block is split in two.
+     */
+    private static class SortIndex {
+        private static final int BLOCK_SIZE = 1024;
+
+        private static class Block {
+            final int[] ordinals = new int[2 * BLOCK_SIZE];
+            int size;
+        }
+
+        private final ArrayList<Block> blocks = new ArrayList<>();
+        // blockOf[ordinal] - the block holding the record, null if it isn't in
+        // the index
+        private Block[] blockOf;
+        private int size;
+
+        /**
+         * @param sorted   the numbers of the records, in order
+         * @param ordinals the number of records of the store
+         */
+        SortIndex(int[] sorted, int ordinals) {
+            blockOf = new Block[Math.max(ordinals, 16)];
+            for (int start = 0; start < sorted.length; start += BLOCK_SIZE) {
+                Block block = new Block();
+                for (int i = start; i < Math.min(sorted.length, start + BLOCK_SIZE); i++) {
+                    block.ordinals[block.size++] = sorted[i];
+                    blockOf[sorted[i]] = block;
+                }
+                blocks.add(block);
+            }
+            size = sorted.length;
+        }
+
+        /**
+         * @return the numbers of the records, in order.
+         */
+        int[] toArray() {
+            int[] all = new int[size];
+            int position = 0;
+            for (Block block : blocks) {
+                System.arraycopy(block.ordinals, 0, all, position, block.size);
+                position += block.size;
+            }
+            return all;
+        }
+
+        /**
+         * Takes a record out of the index, if it's in it.
+         */
+        void remove(int ordinal) {
+            if (ordinal >= blockOf.length || blockOf[ordinal] == null)
+                return;
+            Block block = blockOf[ordinal];
+            blockOf[ordinal] = null;
+            int i = 0;
+            while (block.ordinals[i] != ordinal) {
+                i++;
+            }
+            System.arraycopy(block.ordinals, i + 1, block.ordinals, i, block.size - i - 1);
+            block.size--;
+            size--;
+            if (block.size == 0)
+                blocks.remove(block);
+        }
+
+        /**
+         * Puts a record into the index, after the records that come before it.
+         * 
+         * @param ordinal the number of the record
+         * @param before  tells if the record of a number comes before it
+         */
+        void insert(int ordinal, IntPredicate before) {
+            if (ordinal >= blockOf.length)
+                blockOf = Arrays.copyOf(blockOf, Math.max(ordinal + 1, blockOf.length * 2));
+            if (blocks.isEmpty())
+                blocks.add(new Block());
+
+            // the first block whose last record doesn't come before it
+            int low = 0, high = blocks.size() - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Block block = blocks.get(middle);
+                if (before.test(block.ordinals[block.size - 1]))
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            Block block = blocks.get(low);
+            int from = 0, to = block.size;
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (before.test(block.ordinals[middle]))
+                    from = middle + 1;
+                else
+                    to = middle;
+            }
+
+            if (block.size == block.ordinals.length) {
+                Block upper = new Block();
+                upper.size = block.size - BLOCK_SIZE;
+                System.arraycopy(block.ordinals, BLOCK_SIZE, upper.ordinals, 0, upper.size);
+                for (int i = 0; i < upper.size; i++) {
+                    blockOf[upper.ordinals[i]] = upper;
+                }
+                block.size = BLOCK_SIZE;
+                blocks.add(low + 1, upper);
+                if (from > BLOCK_SIZE) {
+                    block = upper;
+                    from -= BLOCK_SIZE;
+                }
+            }
+            System.arraycopy(block.ordinals, from, block.ordinals, from + 1, block.size - from);
+            block.ordinals[from] = ordinal;
+            block.size++;
+            blockOf[ordinal] = block;
+            size++;
+        }
+    }
+}
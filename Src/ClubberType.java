@@ -0,0 +1,267 @@
+import java.util.*;
+
+/**
+ * Describes a kind of clubber: its name, its identifiers with their
+ * validators, and which identifiers it can be found by. Everything that used to
+ * switch over Person, Student and Soldier reads the descriptor instead - the
+ * records and their keys, {@link FieldValidators#firstInvalid}, the DB files,
+ * the CSV files, the editor frame ({@link Person} builds its rows from it) and
+ * the members table - so a new kind of clubber is a single
+ * {@link #register} call, with no class of its own.
+ * 
+ * Every type has the identifiers of a person (ID, name, surname and phone
+ * number) followed by its own. Types are numbered in the order they are
+ * registered, and the number is what the DB files and journals store, so new
+ * types must always be registered after the built-in ones and in the same
+ * order; the built-in types register theirs below.
+ * 
+ * Lookups don't depend on the types: keys are extracted once, when a record is
+ * committed, and found through the store's indexes. The keys of the built-in
+ * types are packed by {@link ClubberKey}; keys in other formats are indexed as
+ * strings.
+ */
+public final class ClubberType {
+    /**
+     * An identifier of a type.
+     */
+    public static final class Field {
+        private final String name;
+        private final FieldValidators.Validator validator;
+        // where the key starts in the value, -1 if it isn't a key
+        private final int keyStart;
+
+        private Field(String name, FieldValidators.Validator validator, int keyStart) {
+            this.name = name;
+            this.validator = validator;
+            this.keyStart = keyStart;
+        }
+
+        /**
+         * @param name      the identifier's name, as labeled in the editor frame
+         * @param validator checks the identifier's format
+         * @return an identifier the clubber isn't found by.
+         */
+        public static Field of(String name, FieldValidators.Validator validator) {
+            return new Field(name, validator, -1);
+        }
+
+        /**
+         * @param name      the identifier's name, as labeled in the editor frame
+         * @param validator checks the identifier's format
+         * @param start     where the key starts in the value, 0 for the whole
+         *                  value
+         * @return an identifier the clubber is found by, unique across the
+         *         database.
+         */
+        public static Field key(String name, FieldValidators.Validator validator, int start) {
+            return new Field(name, validator, start);
+        }
+    }
+
+    // types and their ids are stored in a byte, and the members table marks blank
+    // records with -1
+    private static final int MAX_TYPES = 127;
+    // the identifiers every type starts with
+    private static final Field[] PERSON_FIELDS = { Field.key("ID", FieldValidators.ID, 0),
+            Field.of("Name", FieldValidators.NAME), Field.of("Surname", FieldValidators.SURNAME),
+            Field.of("Tel", FieldValidators.PHONE) };
+
+    // every registered type, by id. replaced as a whole by register
+    private static volatile ClubberType[] types = new ClubberType[0];
+
+    public static final ClubberType PERSON = register("Person");
+    public static final ClubberType STUDENT = register("Student",
+            Field.key("Student ID", FieldValidators.STUDENT_ID, 4));
+    public static final ClubberType SOLDIER = register("Soldier",
+            Field.key("Personal No.", FieldValidators.PERSONAL_NUMBER, 0));
+
+    private final int id;
+    private final String name;
+    private final String[] fieldNames;
+    private final FieldValidators.Validator[] validators;
+    // keyFields[i] - the identifier of key i, keyStarts[i] - where it starts
+    private final int[] keyFields;
+    private final int[] keyStarts;
+
+    private ClubberType(int id, String name, Field[] fields) {
+        this.id = id;
+        this.name = name;
+        fieldNames = new String[fields.length];
+        validators = new FieldValidators.Validator[fields.length];
+        int keys = 0;
+        for (int i = 0; i < fields.length; i++) {
+            fieldNames[i] = fields[i].name;
+            validators[i] = fields[i].validator;
+            if (fields[i].keyStart >= 0)
+                keys++;
+        }
+        keyFields = new int[keys];
+        keyStarts = new int[keys];
+        keys = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].keyStart >= 0) {
+                keyFields[keys] = i;
+                keyStarts[keys++] = fields[i].keyStart;
+            }
+        }
+    }
+
+    /**
+     * Registers a type of clubber, numbered after the types registered before.
+     * 
+     * @param name        the type's name, as shown and as written in CSV files
+     * @param extraFields the identifiers that follow the ones of a person
+     * @return the type
+     * @throws IllegalArgumentException if a type of that name exists, or there
+     *                                  are too many types
+     */
+    public static synchronized ClubberType register(String name, Field... extraFields) {
+        if (named(name) != null)
+            throw new IllegalArgumentException("There is a clubber type named " + name);
+        if (types.length == MAX_TYPES)
+            throw new IllegalArgumentException("Too many clubber types");
+
+        Field[] fields = Arrays.copyOf(PERSON_FIELDS, PERSON_FIELDS.length + extraFields.length);
+        System.arraycopy(extraFields, 0, fields, PERSON_FIELDS.length, extraFields.length);
+        ClubberType type = new ClubberType(types.length, name, fields);
+        ClubberType[] grown = Arrays.copyOf(types, types.length + 1);
+        grown[type.id] = type;
+        types = grown;
+        return type;
+    }
+
+    /**
+     * @param id the type's number
+     * @return the type
+     * @throws IllegalArgumentException if there's no such type
+     */
+    public static ClubberType of(int id) {
+        ClubberType[] all = types;
+        if (id < 0 || id >= all.length)
+            throw new IllegalArgumentException("Unknown clubber type " + id);
+        return all[id];
+    }
+
+    /**
+     * @param name the type's name
+     * @return the type, or null if there's no type with that name.
+     */
+    public static ClubberType named(String name) {
+        for (ClubberType type : types) {
+            if (type.name.equals(name))
+                return type;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of registered types.
+     */
+    public static int count() {
+        return types.length;
+    }
+
+    /**
+     * @return the names of the registered types, by number.
+     */
+    public static String[] names() {
+        ClubberType[] all = types;
+        String[] names = new String[all.length];
+        for (int i = 0; i < all.length; i++) {
+            names[i] = all[i].name;
+        }
+        return names;
+    }
+
+    /**
+     * @return the largest number of identifiers of any type.
+     */
+    public static int maxFieldCount() {
+        int max = 0;
+        for (ClubberType type : types) {
+            max = Math.max(max, type.getFieldCount());
+        }
+        return max;
+    }
+
+    /**
+     * Names an identifier position across every type, as the header of a column
+     * holding it: the distinct names the types give it, joined by slashes.
+     * 
+     * @param field the identifier's index
+     * @return the names of the identifier
+     */
+    public static String fieldTitle(int field) {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        for (ClubberType type : types) {
+            if (field < type.getFieldCount())
+                names.add(type.fieldNames[field]);
+        }
+        return String.join(" / ", names);
+    }
+
+    /**
+     * @return the type's number, as stored in the DB files.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the type's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of identifiers of a clubber of this type.
+     */
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    /**
+     * @param field the identifier's index
+     * @return the identifier's name, as labeled in the editor frame.
+     */
+    public String getFieldName(int field) {
+        return fieldNames[field];
+    }
+
+    /**
+     * @param field the identifier's index
+     * @return the validator of the identifier.
+     */
+    public FieldValidators.Validator getValidator(int field) {
+        return validators[field];
+    }
+
+    /**
+     * @return the number of keys a clubber of this type is found by.
+     */
+    public int getKeyCount() {
+        return keyFields.length;
+    }
+
+    /**
+     * @param key the key's index
+     * @return the identifier holding the key.
+     */
+    public int getKeyField(int key) {
+        return keyFields[key];
+    }
+
+    /**
+     * @param key the key's index
+     * @return where the key starts in its identifier.
+     */
+    public int getKeyStart(int key) {
+        return keyStarts[key];
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
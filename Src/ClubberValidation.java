@@ -0,0 +1,97 @@
+import java.util.function.Function;
+
+/**
+ * The result of checking the identifiers typed into an editor: the state of
+ * every identifier, and the one to point the user to. It is computed from the
+ * values alone, away from the textfields, so {@link Person} can check on a
+ * background thread while the user types and then show the whole result at
+ * once on the event dispatch thread.
+ * 
+ * The identifiers are checked the way the editor's OK button always did: every
+ * identifier against its {@link FieldValidators.Validator}, and only if they
+ * are all valid, every key against the database. The first identifier that
+ * fails is the one marked.
+ */
+public final class ClubberValidation {
+    // the states of an identifier
+    public static final int VALID = 0, MALFORMED = 1, TAKEN = 2;
+
+    private final int[] states;
+    // the first identifier that isn't valid, -1 if there's none
+    private final int problem;
+    // the key held by another clubber, if the problem is a taken key
+    private final String takenKey;
+
+    private ClubberValidation(int[] states, int problem, String takenKey) {
+        this.states = states;
+        this.problem = problem;
+        this.takenKey = takenKey;
+    }
+
+    /**
+     * Checks the identifiers of a clubber. Safe to call on any thread, as long
+     * as the lookup is.
+     * 
+     * @param type    the clubber's type
+     * @param values  the identifiers, as many as the type has
+     * @param holders finds the clubber, other than the one being edited, that
+     *                holds a key, or returns null
+     * @return the result
+     */
+    public static ClubberValidation check(ClubberType type, String[] values,
+            Function<String, ClubberRecord> holders) {
+        int[] states = new int[values.length];
+        int problem = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (type.getValidator(i).check(values[i]) != FieldValidators.VALID) {
+                states[i] = MALFORMED;
+                if (problem < 0)
+                    problem = i;
+            }
+        }
+        if (problem >= 0)
+            return new ClubberValidation(states, problem, null);
+
+        for (int i = 0; i < type.getKeyCount(); i++) {
+            int field = type.getKeyField(i);
+            int start = type.getKeyStart(i);
+            String key = values[field].length() > start ? values[field].substring(start) : "";
+            if (!key.isEmpty() && holders.apply(key) != null) {
+                states[field] = TAKEN;
+                return new ClubberValidation(states, field, key);
+            }
+        }
+        return new ClubberValidation(states, -1, null);
+    }
+
+    /**
+     * @return true if every identifier is valid and no key is taken.
+     */
+    public boolean isValid() {
+        return problem < 0;
+    }
+
+    /**
+     * @return the first identifier that isn't valid, or -1 if there's none.
+     */
+    public int getProblem() {
+        return problem;
+    }
+
+    /**
+     * @param field the identifier's index
+     * @return the state of the identifier: {@link #VALID}, {@link #MALFORMED} or
+     *         {@link #TAKEN}. Keys are only checked once every identifier is
+     *         valid.
+     */
+    public int getState(int field) {
+        return states[field];
+    }
+
+    /**
+     * @return the key another clubber holds, or null if no key is taken.
+     */
+    public String getTakenKey() {
+        return takenKey;
+    }
+}
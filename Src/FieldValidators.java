@@ -0,0 +1,208 @@
+/**
+ * Validators for the identifiers of a clubber. Each one scans the characters of
+ * a value once, without regular expressions and without allocating, and
+ * returns the position of the first character that breaks the format, so the
+ * same rules can be used by the editor frames and by bulk imports.
+ * 
+ * The formats are those the editor frames always used:
+ * <ul>
+ * <li>ID - {@code \d-\d{7}\|[1-9]}</li>
+ * <li>name - {@code [A-Z][a-z]+}</li>
+ * <li>surname - {@code ([A-Z][a-z]*('|-)?)+}</li>
+ * <li>phone number - {@code \+\([1-9]\d{0,2}\)[1-9]\d{0,2}-[1-9]\d{6}}</li>
+ * <li>student ID - {@code [A-Z]{3}/[1-9]\d{4}}</li>
+ * <li>personal number - {@code [ROC]/[1-9]\d{6}}</li>
+ * </ul>
+ */
+public final class FieldValidators {
+    // returned for a valid value
+    public static final int VALID = -1;
+
+    /**
+     * Checks the format of a single identifier.
+     */
+    public interface Validator {
+        /**
+         * @param value the value to check
+         * @return {@link #VALID}, or the position of the first character that
+         *         breaks the format (the length of the value if it is too short).
+         */
+        int check(CharSequence value);
+    }
+
+    public static final Validator ID = FieldValidators::checkId;
+    public static final Validator NAME = FieldValidators::checkName;
+    public static final Validator SURNAME = FieldValidators::checkSurname;
+    public static final Validator PHONE = FieldValidators::checkPhone;
+    public static final Validator STUDENT_ID = FieldValidators::checkStudentId;
+    public static final Validator PERSONAL_NUMBER = FieldValidators::checkPersonalNumber;
+
+    private FieldValidators() {
+    }
+
+    /**
+     * Returns the validator of an identifier of a record type, as its
+     * {@link ClubberType} declares it.
+     * 
+     * @param type  the record's type
+     * @param field the identifier's index
+     * @return the validator
+     */
+    public static Validator of(int type, int field) {
+        return ClubberType.of(type).getValidator(field);
+    }
+
+    /**
+     * Checks every identifier of a record.
+     * 
+     * @param record the record to check
+     * @return the index of the first invalid identifier, or {@link #VALID}.
+     */
+    public static int firstInvalid(ClubberRecord record) {
+        ClubberType type = record.getClubberType();
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            if (type.getValidator(i).check(record.get(i)) != VALID)
+                return i;
+        }
+        return VALID;
+    }
+
+    /**
+     * {@code \d-\d{7}\|[1-9]}
+     */
+    private static int checkId(CharSequence value) {
+        int pos = digits(value, 0, 1, 1);
+        pos = literal(value, pos, '-');
+        pos = digits(value, pos, 7, 7);
+        pos = literal(value, pos, '|');
+        pos = nonZeroDigit(value, pos);
+        return end(value, pos);
+    }
+
+    /**
+     * {@code [A-Z][a-z]+}
+     */
+    private static int checkName(CharSequence value) {
+        if (value.length() == 0 || !isUpper(value.charAt(0)))
+            return 0;
+        if (value.length() == 1)
+            return 1;
+        for (int i = 1; i < value.length(); i++) {
+            if (!isLower(value.charAt(i)))
+                return i;
+        }
+        return VALID;
+    }
+
+    /**
+     * {@code ([A-Z][a-z]*('|-)?)+} - capitalized words, each optionally followed
+     * by an apostrophe or a hyphen.
+     */
+    private static int checkSurname(CharSequence value) {
+        if (value.length() == 0)
+            return 0;
+
+        // a lower case letter or a separator may only follow a letter
+        boolean afterLetter = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUpper(c))
+                afterLetter = true;
+            else if (afterLetter && isLower(c))
+                afterLetter = true;
+            else if (afterLetter && (c == '\'' || c == '-'))
+                afterLetter = false;
+            else
+                return i;
+        }
+        return VALID;
+    }
+
+    /**
+     * {@code \+\([1-9]\d{0,2}\)[1-9]\d{0,2}-[1-9]\d{6}}
+     */
+    private static int checkPhone(CharSequence value) {
+        int pos = literal(value, 0, '+');
+        pos = literal(value, pos, '(');
+        pos = nonZeroDigit(value, pos);
+        pos = digits(value, pos, 0, 2);
+        pos = literal(value, pos, ')');
+        pos = nonZeroDigit(value, pos);
+        pos = digits(value, pos, 0, 2);
+        pos = literal(value, pos, '-');
+        pos = nonZeroDigit(value, pos);
+        pos = digits(value, pos, 6, 6);
+        return end(value, pos);
+    }
+
+    /**
+     * {@code [A-Z]{3}/[1-9]\d{4}}
+     */
+    private static int checkStudentId(CharSequence value) {
+        int pos = 0;
+        for (; pos < 3; pos++) {
+            if (pos >= value.length() || !isUpper(value.charAt(pos)))
+                return pos;
+        }
+        pos = literal(value, pos, '/');
+        pos = nonZeroDigit(value, pos);
+        pos = digits(value, pos, 4, 4);
+        return end(value, pos);
+    }
+
+    /**
+     * {@code [ROC]/[1-9]\d{6}}
+     */
+    private static int checkPersonalNumber(CharSequence value) {
+        if (value.length() == 0 || "ROC".indexOf(value.charAt(0)) < 0)
+            return 0;
+        int pos = literal(value, 1, '/');
+        pos = nonZeroDigit(value, pos);
+        pos = digits(value, pos, 6, 6);
+        return end(value, pos);
+    }
+
+    // the scanning steps below take the position to scan from and return the
+    // position after what they matched. a failed step returns the position of the
+    // error encoded as -2 - position, which every following step passes on
+
+    private static int literal(CharSequence value, int pos, char c) {
+        if (pos < 0)
+            return pos;
+        return pos < value.length() && value.charAt(pos) == c ? pos + 1 : -2 - pos;
+    }
+
+    private static int nonZeroDigit(CharSequence value, int pos) {
+        if (pos < 0)
+            return pos;
+        return pos < value.length() && value.charAt(pos) >= '1' && value.charAt(pos) <= '9' ? pos + 1 : -2 - pos;
+    }
+
+    private static int digits(CharSequence value, int pos, int min, int max) {
+        if (pos < 0)
+            return pos;
+        int count = 0;
+        while (count < max && pos + count < value.length() && isDigit(value.charAt(pos + count))) {
+            count++;
+        }
+        return count >= min ? pos + count : -2 - (pos + count);
+    }
+
+    private static int end(CharSequence value, int pos) {
+        if (pos < 0)
+            return -2 - pos;
+        return pos == value.length() ? VALID : pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * The JMX view of a {@link LatencyHistogram}, as shown by JConsole or
+ * VisualVM under "BKClub". Times are in microseconds.
+ */
+public interface LatencyHistogramMXBean {
+    String getName();
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * A map of {@code long} keys from 0 to 2^32 - 1 (the codes of
+ * {@link ClubberKey}) to non-negative {@code int} values, kept in a single
+ * {@code long[]} with open addressing and linear probing. Each slot packs a
+ * key in its high half and its value plus one in its low half, 0 marking a
+ * free slot. Nothing is boxed, so lookups allocate nothing and an entry takes
+ * 8 bytes plus the free slots, against the 32 byte node, key and boxed value
+ * of a {@link java.util.HashMap}. Removal shifts the following entries back,
+ * so the table never fills up with deleted slots.
+ * 
+ * The map isn't thread safe. A lookup running while the map is changed may
+ * miss or return a wrong value, but always returns, and never throws, so a
+ * {@link java.util.concurrent.locks.StampedLock} optimistic read can guard it,
+ * as {@link ClubberStore} does.
+ */
+public class LongIntMap {
+    // returned for a key that isn't in the map
+    public static final int MISSING = -1;
+    // the table grows once it is this full
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final long MAX_KEY = 0xFFFFFFFFL;
+
+    private long[] slots;
+    private int size;
+    private int growAt;
+
+    /**
+     * Creates a map with room for the given number of entries before it grows.
+     * 
+     * @param expected the number of entries expected
+     */
+    public LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        slots = new long[capacity];
+        growAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or {@link #MISSING}.
+     */
+    public int get(long key) {
+        // a concurrent resize swaps the table, read it once
+        long[] slots = this.slots;
+        int mask = slots.length - 1;
+        for (int i = ClubberKey.hash(key) & mask;; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == 0)
+                return MISSING;
+            if (slot >>> 32 == key)
+                return (int) slot - 1;
+        }
+    }
+
+    /**
+     * Maps a key to a value.
+     * 
+     * @param key   the key, from 0 to 2^32 - 1
+     * @param value the value, not negative
+     * @return the previous value of the key, or {@link #MISSING}.
+     */
+    public int put(long key, int value) {
+        if (key < 0 || key > MAX_KEY || value < 0)
+            throw new IllegalArgumentException("Can't map " + key + " to " + value);
+        if (size >= growAt)
+            grow();
+
+        long packed = key << 32 | (value + 1L);
+        int mask = slots.length - 1;
+        for (int i = ClubberKey.hash(key) & mask;; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == 0) {
+                slots[i] = packed;
+                size++;
+                return MISSING;
+            }
+            if (slot >>> 32 == key) {
+                slots[i] = packed;
+                return (int) slot - 1;
+            }
+        }
+    }
+
+    /**
+     * Maps a key to a value, unless the key already has one.
+     * 
+     * @param key   the key, from 0 to 2^32 - 1
+     * @param value the value, not negative
+     * @return the value the key already had, or {@link #MISSING} if it was put.
+     */
+    public int putIfAbsent(long key, int value) {
+        int existing = get(key);
+        return existing != MISSING ? existing : put(key, value);
+    }
+
+    /**
+     * Removes a key, if it maps to the given value.
+     * 
+     * @param key   the key
+     * @param value the value it must map to
+     * @return true if it was removed.
+     */
+    public boolean remove(long key, int value) {
+        int mask = slots.length - 1;
+        int i = ClubberKey.hash(key) & mask;
+        for (;; i = (i + 1) & mask) {
+            if (slots[i] == 0)
+                return false;
+            if (slots[i] >>> 32 == key)
+                break;
+        }
+        if ((int) slots[i] - 1 != value)
+            return false;
+
+        // move back the entries that probed past the freed slot
+        int free = i;
+        for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = ClubberKey.hash(slots[j] >>> 32) & mask;
+            // j's entry may move to the free slot if its home isn't between them
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                slots[free] = slots[j];
+                free = j;
+            }
+        }
+        slots[free] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /**
+     * Doubles the table. The new table is filled before it replaces the old one,
+     * so a concurrent lookup sees either table whole.
+     */
+    private void grow() {
+        long[] grown = new long[slots.length * 2];
+        int mask = grown.length - 1;
+        for (long slot : slots) {
+            if (slot == 0)
+                continue;
+            int i = ClubberKey.hash(slot >>> 32) & mask;
+            while (grown[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            grown[i] = slot;
+        }
+        slots = grown;
+        growAt = (int) (grown.length * LOAD_FACTOR);
+    }
+}
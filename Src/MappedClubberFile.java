@@ -0,0 +1,183 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * A read-only view of a clubbers database file that is memory-mapped instead
+ * of read. Opening it only checks the header; records are decoded one at a
+ * time with {@link #decode}, and keys are searched in the file's index with
+ * {@link #findKey}, so neither opening nor searching depends on the number of
+ * records. Only files with an index (version 2 of {@link ClubberFile}) can be
+ * mapped.
+ * 
+ * A key is checked against the file's {@link ClubberKeyFilter} before the
+ * index is searched, so keys that aren't in the file rarely touch it. When the
+ * checksum of the file is known, the filter is read from next to the file; a
+ * file without one, or with one that doesn't match it, gets one built from its
+ * index when it is mapped, which is then saved for the next time. Otherwise
+ * the filter is built from the index every time, as reading the whole file to
+ * check the stored one would cost more.
+ */
+public class MappedClubberFile {
+    private final ByteBuffer map;
+    private final int count;
+    // file offsets of the record offsets and of the key entries
+    private final int offsetsStart, keysStart;
+    private final int keyCount;
+    private final ClubberKeyFilter filter;
+
+    /**
+     * Maps the given file and checks its header. Its key filter is built from
+     * its index.
+     * 
+     * @param path the file to map
+     * @throws NoSuchFileException if the file does not exist
+     * @throws IOException         if the file can't be mapped or isn't a clubbers
+     *                             database with an index
+     */
+    public MappedClubberFile(Path path) throws IOException {
+        this(path, false, 0);
+    }
+
+    /**
+     * Maps the given file, whose checksum has already been checked, and checks
+     * its header. Its key filter is read from next to it if it was written for
+     * the file with that checksum.
+     * 
+     * @param path     the file to map
+     * @param checksum the {@link java.util.zip.CRC32C} of the file, see
+     *                 {@link ClubberFile#checksum}
+     * @throws NoSuchFileException if the file does not exist
+     * @throws IOException         if the file can't be mapped or isn't a clubbers
+     *                             database with an index
+     */
+    public MappedClubberFile(Path path, int checksum) throws IOException {
+        this(path, true, checksum);
+    }
+
+    private MappedClubberFile(Path path, boolean checked, int checksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is too large to be mapped");
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (map.limit() < ClubberFile.HEADER_SIZE || map.getInt(0) != ClubberFile.MAGIC)
+            throw new IOException(path + " is not a clubbers database");
+        short version = map.getShort(4);
+        if (version != ClubberFile.VERSION)
+            throw new IOException(path + " has no index (version " + version + ")");
+
+        count = map.getInt(ClubberFile.COUNT_OFFSET);
+        long indexOffset = map.getLong(ClubberFile.INDEX_OFFSET);
+        if (count < 0 || indexOffset < ClubberFile.HEADER_SIZE || indexOffset + 8L * count + 4 > map.limit())
+            throw new IOException(path + " has a corrupt index");
+
+        offsetsStart = (int) indexOffset;
+        keyCount = map.getInt(offsetsStart + 8 * count);
+        keysStart = offsetsStart + 8 * count + 4;
+        if (keyCount < 0 || keysStart + 8L * keyCount > map.limit())
+            throw new IOException(path + " has a corrupt index");
+
+        filter = checked ? readFilter(path, checksum) : buildFilter();
+    }
+
+    /**
+     * Reads the key filter of the file, or builds it from the index and tries to
+     * save it if it's missing or doesn't match.
+     */
+    private ClubberKeyFilter readFilter(Path path, int checksum) {
+        try {
+            ClubberKeyFilter stored = ClubberKeyFilter.read(path, map.limit(), keyCount, checksum);
+            if (stored != null)
+                return stored;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        ClubberKeyFilter built = buildFilter();
+        try {
+            built.write(path, map.limit(), keyCount, checksum);
+        } catch (IOException e) {
+            // a read only directory, built again next time
+        }
+        return built;
+    }
+
+    private ClubberKeyFilter buildFilter() {
+        ClubberKeyFilter built = new ClubberKeyFilter(keyCount);
+        for (int slot = 0; slot < keyCount; slot++) {
+            built.add(keyHash(slot));
+        }
+        return built;
+    }
+
+    /**
+     * @return the number of records in the file.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Decodes a record of the file.
+     * 
+     * @param ordinal the number of the record, from 0 to {@link #getCount()}
+     * @return the decoded record
+     * @throws IOException if the record is corrupt
+     */
+    public ClubberRecord decode(int ordinal) throws IOException {
+        int offset = (int) map.getLong(offsetsStart + 8 * ordinal);
+        ByteBuffer record = map.duplicate();
+        record.position(offset).limit(offsetsStart);
+        return ClubberFile.decode(record);
+    }
+
+    /**
+     * Searches the index for the first key with the given hash, unless the key
+     * filter tells there's none.
+     * 
+     * @param hash the {@link String#hashCode} of the key
+     * @return the slot of the first key with the hash, or -1 if there's none.
+     *         Slots after it may hold the same hash, see {@link #keyHash}.
+     */
+    public int findKey(int hash) {
+        if (!filter.mightContain(hash))
+            return -1;
+
+        // binary search for the lowest slot with the hash
+        int low = 0, high = keyCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyHash(mid) < hash)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < keyCount && keyHash(low) == hash ? low : -1;
+    }
+
+    /**
+     * @param slot a slot of the index
+     * @return the hash of the key in the slot.
+     */
+    public int keyHash(int slot) {
+        return map.getInt(keysStart + 8 * slot);
+    }
+
+    /**
+     * @param slot a slot of the index
+     * @return the number of the record the key in the slot belongs to.
+     */
+    public int keyOrdinal(int slot) {
+        return map.getInt(keysStart + 8 * slot + 4);
+    }
+
+    /**
+     * @return the number of slots in the index.
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+}
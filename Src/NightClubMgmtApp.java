@@ -1,43 +1,90 @@
 
+import java.awt.BorderLayout;
+import java.awt.Cursor;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 
 /**
  * This class extends {@link JFrame}. It acts as the main class for the program.
  * Managing the GUI and writing to and from the database using
- * {@link #writeClubbersDBtoFile()} and {@link #loadClubbersDBFromFile()}.
+ * {@link #writeClubbersDBtoFile} and {@link #loadClubbersDBFromFile()}, both on
+ * background threads.
  * 
- * It has a field of {@link ArrayList} containing all saved
- * {@link ClubAbstractEntity}, polymorphically.
+ * It has a {@link ClubberDatabase} containing all saved {@link ClubberRecord},
+ * which maps the DB file, decodes records only when they are needed and
+ * journals every commit. The records are edited through a single reusable
+ * {@link ClubAbstractEntity} frame per type.
+ * 
+ * The database is used through {@link ClubberRepository}, which is safe for
+ * many threads and claims keys atomically, so commits may come from several
+ * door terminals at once.
+ * 
+ * The latency of lookups, validation, commits and the DB file is measured by
+ * {@link ClubberMetrics}, which is published over JMX and dumped to
+ * "BKMetrics.log" every minute.
+ * 
+ * Clubbers entering and leaving are recorded by a {@link CheckInLog}, whose
+ * live counters are shown at the bottom of the window.
+ * 
+ * Started with {@code --server [port]} the program has no GUI and serves its
+ * database to other terminals, as {@link ClubberCli} {@code serve} does. Started with
+ * {@code --connect host[:port]} it is a thin client of such a server, through a
+ * {@link ClubberClient}, and keeps no DB file of its own.
  */
 public class NightClubMgmtApp extends JFrame {
-    private static ArrayList<ClubAbstractEntity> clubbers;
+    // the local database, null when connected to a server
+    private static ClubberDatabase database;
+    // the database in use: the local one or the server's
+    private static ClubberRepository clubbers;
+    // the connection to the server, when running as a client
+    private static ClubberClient client;
+    // entries and exits of this terminal
+    private static CheckInLog checkIns;
+    // live occupancy, refreshed every second
+    private JLabel occupancyLabel = new JLabel(" ");
+    // created the first time quick search is used
+    private ClubberSearchFrame searchFrame;
+    // true while the index of the quick search is built
+    private boolean searchBuilding;
+    // true while a CSV file is imported or exported
+    private boolean csvRunning;
+    // created the first time the members are browsed
+    private ClubberTableFrame membersFrame;
+    // buttons that need the database loaded
+    private JButton[] databaseButtons;
+    // true once the window was closed and the program is exiting
+    private boolean exiting;
+    // editor frames, built ahead of time and reused
+    private final ClubberEditorPool editors = new ClubberEditorPool();
 
     /**
      * This empty constructor serves as the main function of the program, it handles
      * all events and initializations of itself
      */
     public NightClubMgmtApp() {
-        // initialize clubbers using DB (if it exists)
-        clubbers = new ArrayList<>();
-        loadClubbersDBFromFile();
+        ClubberMetrics.start(ClubberMetrics.DEFAULT_DUMP_FILE, ClubberMetrics.DEFAULT_DUMP_SECONDS);
 
         // create panel and buttons for the app
         JButton searchButton = new JButton("Search");
+        JButton quickSearchButton = new JButton("Quick Search");
+        JButton membersButton = new JButton("Members");
         JButton addButton = new JButton("Add");
-        String[] types = { "Person", "Student", "Soldier" };
-        JComboBox<String> choice = new JComboBox<>(types);
+        JButton importButton = new JButton("Import CSV");
+        JButton exportButton = new JButton("Export CSV");
+        JButton checkInButton = new JButton("Check In");
+        JButton checkOutButton = new JButton("Check Out");
+        JComboBox<String> choice = new JComboBox<>(ClubberType.names());
 
         // add listeners and anonymous inner listener
         addButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                ClubAbstractEntity ent = createEntity(choice.getSelectedIndex());
-                if (ent != null) {
-                    clubbers.add(ent);
-                    ent.setVisible(true);
-                }
+                ClubberRecord rec = createEntity(choice.getSelectedIndex());
+                if (rec != null)
+                    showEditor(rec);
             }
         });
         // search
@@ -46,11 +93,50 @@ public class NightClubMgmtApp extends JFrame {
                 manipulateDB();
             }
         });
+        // quick search
+        quickSearchButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showQuickSearch();
+            }
+        });
+        // browse every clubber
+        membersButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showMembers();
+            }
+        });
+        // bulk import and export
+        importButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                importCsv();
+            }
+        });
+        exportButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportCsv();
+            }
+        });
+        // entries and exits
+        checkInButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                checkIn(true);
+            }
+        });
+        checkOutButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                checkIn(false);
+            }
+        });
+        new javax.swing.Timer(1000, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                updateOccupancy();
+            }
+        }).start();
         // window closing
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
-                writeClubbersDBtoFile();
-                System.exit(0);
+                exit();
             }
         });
 
@@ -59,175 +145,554 @@ public class NightClubMgmtApp extends JFrame {
         buttonsPanel.add(choice);
         buttonsPanel.add(addButton);
         buttonsPanel.add(searchButton);
+        buttonsPanel.add(quickSearchButton);
+        buttonsPanel.add(membersButton);
+        buttonsPanel.add(importButton);
+        buttonsPanel.add(exportButton);
+        buttonsPanel.add(checkInButton);
+        buttonsPanel.add(checkOutButton);
+        // the search index and the table follow a local database only, and
+        // nothing is changed until it's loaded
+        databaseButtons = new JButton[] { addButton, quickSearchButton, membersButton, importButton, exportButton };
+        if (client == null) {
+            for (JButton button : databaseButtons) {
+                button.setEnabled(false);
+            }
+        } else {
+            quickSearchButton.setEnabled(false);
+            membersButton.setEnabled(false);
+        }
 
         // app's window 'settings'
         add(buttonsPanel);
-        setSize(450, 200);
+        add(occupancyLabel, BorderLayout.SOUTH);
+        updateOccupancy();
+        setSize(480, 220);
         setTitle("BK Club Management");
         setLocationRelativeTo(null);
         setResizable(false);
         setVisible(true);
+
+        // build an editor of every type while the user looks at the window
+        SwingUtilities.invokeLater(() -> editors.warm(1));
+
+        // initialize clubbers using DB (if it exists), unless a server keeps them
+        if (client == null) {
+            loadClubbersDBFromFile();
+        } else {
+            clubbers = client;
+            openCheckIns();
+        }
     }
 
     /**
-     * check if the entity already exists using {@link ClubAbstractEntity#match} of
-     * each inheritor individually {@link Person#match}, {@link Student#match},
-     * {@link Soldier#match}.
+     * Looks a key up using {@link ClubberRepository#find}, without telling the
+     * user, so the editors can check their keys on a background thread. This
+     * only tells the user early; the key is claimed atomically by
+     * {@link #commit}.
      * 
-     * @param name      The name of the entity.
-     * @param key       The key to match by.
-     * @param newEntity The entity we want to check.
+     * @param key    The key to look up.
+     * @param record The record being edited, which may hold the key itself.
      * 
-     * @return true if entity exist, false otherwise.
+     * @return the clubber, other than the record, that holds the key, or null.
      */
-    public static boolean isExist(String name, String key, ClubAbstractEntity newEntity) {
-        for (ClubAbstractEntity clubber : clubbers) {
+    public static ClubberRecord holderOf(String key, ClubberRecord record) {
+        long start = System.nanoTime();
+        ClubberRecord clubber = clubbers.find(key);
 
-            // check if newEntity's key matches another entity key within the array.
-            if (clubber != newEntity && clubber.match(key)) {
-                String str = name + " " + key + " is in the database";
-                JOptionPane.showMessageDialog(newEntity, str, "Clubber Already In Data Base",
-                        JOptionPane.INFORMATION_MESSAGE);
-                return true;
-            }
-        }
-        return false;
+        // check if the key belongs to another record within the store. records
+        // of a server are copies, so compare their numbers
+        if (clubber != null && clubber.getOrdinal() == record.getOrdinal())
+            clubber = null;
+        ClubberMetrics.IS_EXIST.recordSince(start);
+        return clubber;
     }
 
     /**
-     * Create a new entity.
+     * Commits the edited data of an editor into its bound record using
+     * {@link ClubberRepository#commit}, and appends the commit to the journal. A
+     * new clubber isn't in the database until then, and is added with
+     * {@link ClubberRepository#add} instead. If another record took one of the
+     * keys since the editor validated its data, nothing is committed. Called by
+     * the editors on a background thread, as a server may take a while to
+     * answer.
      * 
-     * @param idx The index of the combobox, selected by the user. 0 - Person, 1 -
-     *            Student, 2 - Soldier
-     * @return a new instance of the chosen entity
-     */
-    private ClubAbstractEntity createEntity(int idx) {
-        switch (idx) {
-            case 0:
-                return new Person();
-            case 1:
-                return new Student();
-            case 2:
-                return new Soldier();
-            default:
-                return null;
+     * @param record the record bound to the editor
+     * @param edited the new data of the record
+     * @return the clubber holding one of the keys, or null if the record was
+     *         committed
+     * @throws UncheckedIOException  if the journal or the server failed
+     * @throws IllegalStateException if the database isn't loaded
+     */
+    public static ClubberRecord commit(ClubberRecord record, ClubberRecord edited) {
+        return record.getOrdinal() < 0 ? clubbers.add(edited) : clubbers.commit(record, edited);
+    }
 
-        }
+    /**
+     * Create a new, empty record.
+     * 
+     * @param idx The index of the combobox, selected by the user: the number of a
+     *            {@link ClubberType}
+     * @return a new record of the chosen type, added to the database once its
+     *         editor commits it
+     */
+    private ClubberRecord createEntity(int idx) {
+        if (idx < 0 || idx >= ClubberType.count())
+            return null;
+
+        return ClubberRecord.blank(idx);
+    }
+
+    /**
+     * Binds an idle editor frame of the record's type to the record and shows it,
+     * using {@link ClubberEditorPool#open}.
+     * 
+     * @param record the record to show
+     */
+    private void showEditor(ClubberRecord record) {
+        editors.open(record);
     }
 
     /**
-     * Searches an entity using {@link ClubAbstractEntity#match(String)}.
+     * Searches a record in the store using {@link ClubberStore#find(String)}.
      * 
      * @param key a string to search for
-     * @return the entity itself, if it's found
+     * @return the record itself, if it's found
      */
-    private ClubAbstractEntity find(String key) {
-        for (ClubAbstractEntity clubber : clubbers) {
-            if (clubber.match(key))
-                return clubber;
-        }
-        return null;
+    private ClubberRecord find(String key) {
+        return clubbers.find(key);
     }
 
     /**
      * Function to show the requested clubber's info. It asks the user for a
      * clubber's key and searches it in the database by utilizing the {@link #find}
-     * method. If the requested clubber was found, the function displays their info.
-     * If the requested clubber was not found, the function displays a message to
-     * notify the user.
+     * method, on a background thread as the database may be a server's. If the
+     * requested clubber was found, the function displays their info. If the
+     * requested clubber was not found, the function displays a message to notify
+     * the user and asks again.
      */
     private void manipulateDB() {
-        String input;
+        // input key to dialog
+        String input = JOptionPane.showInputDialog(this, "Enter Clubber's Key ");
 
-        // lets input dialog open again in case the user entered a nonexistent key
-        while (true) {
-            // input key to dialog
-            input = JOptionPane.showInputDialog(this, "Enter Clubber's Key ");
+        // cancel was pressed
+        if (input == null)
+            return;
 
-            // cancel was pressed
-            if (input == null) {
-                break;
+        // look for a clubber with given input
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<ClubberRecord, Void>() {
+            @Override
+            protected ClubberRecord doInBackground() {
+                return find(input);
             }
 
-            // look for a clubber with given input
-            ClubAbstractEntity clubber = find(input);
-            if (clubber != null) {
-                clubber.setVisible(true);
-                break;
-            }
-            // clubber not found
-            else {
-                JOptionPane.showMessageDialog(this, "Clubber with key " + input + " does not exist",
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                ClubberRecord clubber;
+                try {
+                    clubber = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Search failed: " + e.getMessage(),
+                            "Search Failed", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (clubber != null) {
+                    showEditor(clubber);
+                    return;
+                }
+                // clubber not found, the input dialog opens again
+                JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Clubber with key " + input + " does not exist",
                         "Clubber Not Found", JOptionPane.INFORMATION_MESSAGE);
+                manipulateDB();
             }
-        }
+        }.execute();
     }
 
     /**
-     * Function to read clubbers information from a file named "BKCustomers.dat", to
-     * an ArrayList of {@link ClubAbstractEntity}, by using the
-     * {@link ObjectInputStream} and {@link FileInputStream} classes. In addition,
+     * Function to record a clubber entering or leaving. It asks the user for a
+     * clubber's key and records the event in the {@link CheckInLog}, which finds
+     * the clubber by any of their keys, on a background thread as the database
+     * may be a server's.
      * 
+     * @param entering true for an entry, false for an exit
+     */
+    private void checkIn(boolean entering) {
+        if (checkIns == null)
+            return;
+
+        String input = JOptionPane.showInputDialog(this, "Enter Clubber's Key ");
+        if (input == null)
+            return;
+
+        new SwingWorker<ClubberRecord, Void>() {
+            @Override
+            protected ClubberRecord doInBackground() {
+                return entering ? checkIns.enter(input) : checkIns.leave(input);
+            }
+
+            @Override
+            protected void done() {
+                ClubberRecord clubber;
+                try {
+                    clubber = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Check in failed: " + e.getMessage(),
+                            "Check In Failed", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (clubber == null) {
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this,
+                            "Clubber with key " + input + " does not exist", "Clubber Not Found",
+                            JOptionPane.INFORMATION_MESSAGE);
+                }
+                updateOccupancy();
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows the live counters of the {@link CheckInLog}.
+     */
+    private void updateOccupancy() {
+        if (checkIns == null)
+            return;
+        occupancyLabel.setText("  Inside: " + checkIns.getOccupancy() + "   Peak: " + checkIns.getPeak()
+                + "   Entries in the last minute: " + checkIns.getEntriesLastMinute());
+    }
+
+    /**
+     * Function to show the quick search frame, which finds clubbers by the
+     * beginning of any identifier as it is typed. The {@link ClubberSearchIndex}
+     * behind it is built the first time, on a background thread, and the frame
+     * is shown once it's built; it follows the store from then on.
+     */
+    private void showQuickSearch() {
+        if (searchFrame != null) {
+            searchFrame.setVisible(true);
+            return;
+        }
+        if (searchBuilding)
+            return;
+
+        searchBuilding = true;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<ClubberSearchIndex, Void>() {
+            @Override
+            protected ClubberSearchIndex doInBackground() {
+                return new ClubberSearchIndex(database.getStore());
+            }
+
+            @Override
+            protected void done() {
+                searchBuilding = false;
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    searchFrame = new ClubberSearchFrame(database, get(), NightClubMgmtApp.this::showEditor);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Can't search the clubbers: "
+                            + e.getMessage(), "Quick Search", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                searchFrame.setVisible(true);
+            }
+        }.execute();
+    }
+
+    /**
+     * Function to show the members frame, a table of every clubber that can be
+     * sorted and filtered. The {@link ClubberTableModel} behind it is built the
+     * first time, and follows the store from then on.
+     */
+    private void showMembers() {
+        if (membersFrame == null)
+            membersFrame = new ClubberTableFrame(database.getStore(), this::showEditor);
+        membersFrame.setVisible(true);
+    }
+
+    /**
+     * Function to import clubbers from a CSV file chosen by the user, by utilizing
+     * {@link ClubberCsv#importFile}. The file is read on a background thread with a
+     * {@link ClubberProgressDialog}, and every imported clubber is written to the
+     * journal like any other addition. The user is shown how many rows were
+     * imported and why the others were rejected.
+     */
+    private void importCsv() {
+        if (csvRunning)
+            return;
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        Path path = chooser.getSelectedFile().toPath();
+        csvRunning = true;
+        ClubberProgressDialog progress = new ClubberProgressDialog(this, "Importing clubbers...",
+                "Stop importing, the rows read so far stay imported");
+        new SwingWorker<ClubberCsv.ImportReport, Void>() {
+            @Override
+            protected ClubberCsv.ImportReport doInBackground() throws IOException {
+                return ClubberCsv.importFile(path, clubbers, null, progress);
+            }
+
+            @Override
+            protected void done() {
+                csvRunning = false;
+                progress.finish();
+                ClubberCsv.ImportReport report;
+                try {
+                    report = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof CancellationException) {
+                        JOptionPane.showMessageDialog(NightClubMgmtApp.this,
+                                "Import cancelled, the rows read before stay imported", "Import Cancelled",
+                                JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Import failed: " + cause.getMessage(),
+                            "Import Failed", JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                    return;
+                }
+
+                // show the first rejected rows, the rest are only counted
+                StringBuilder message = new StringBuilder(report.toString());
+                List<String> rejected = report.getRejected();
+                for (int i = 0; i < Math.min(rejected.size(), 20); i++) {
+                    message.append('\n').append(rejected.get(i));
+                }
+                if (rejected.size() > 20)
+                    message.append("\n...");
+                JOptionPane.showMessageDialog(NightClubMgmtApp.this, message, "Import Finished",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+
+    /**
+     * Function to export every clubber to a CSV file chosen by the user, by
+     * utilizing {@link ClubberCsv#exportFile}. The file is written on a
+     * background thread with a {@link ClubberProgressDialog}.
+     */
+    private void exportCsv() {
+        if (csvRunning)
+            return;
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        Path path = chooser.getSelectedFile().toPath();
+        csvRunning = true;
+        ClubberProgressDialog progress = new ClubberProgressDialog(this, "Exporting clubbers...",
+                "Stop exporting and delete the file");
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                return ClubberCsv.exportFile(path, clubbers.records(), progress);
+            }
+
+            @Override
+            protected void done() {
+                csvRunning = false;
+                progress.finish();
+                try {
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, get() + " clubbers exported",
+                            "Export Finished", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof CancellationException)
+                        return;
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this, "Export failed: " + cause.getMessage(),
+                            "Export Failed", JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Function to open the clubbers information of a file named "BKCustomers.dat"
+     * as a {@link ClubberDatabase}, which maps the file instead of reading it.
+     * The database is then loaded on a background thread, which reads older files
+     * that can't be mapped and replays the journal, with a
+     * {@link ClubberProgressDialog}. Meanwhile clubbers already loaded can be
+     * searched; the buttons that change the database are enabled once it's
+     * loaded, and the journal compaction is started.
      * 
-     * the function removes any empty entities which were created by closing the
-     * main window, after pressing the "Add" button and before saving anything.
+     * The user is told if there is no such file yet. If the file can't be read
+     * the program stops, rather than overwrite it with an empty database on exit.
+     * Cancelling the load quits the program without writing anything.
      */
-    @SuppressWarnings("unchecked")
     private void loadClubbersDBFromFile() {
-
         try {
-            // create a new object input stream
-            ObjectInputStream ois = new ObjectInputStream(new FileInputStream("BKCustomers.dat"));
-
-            // read info from DB file to the array
-            clubbers = (ArrayList<ClubAbstractEntity>) ois.readObject();
-            ois.close();
-        } catch (FileNotFoundException e) {
-            JOptionPane.showMessageDialog(this, "Database file not found.\nA new file will be created.",
-                    "Database file not found", JOptionPane.INFORMATION_MESSAGE);
-            e.printStackTrace();
+            database = new ClubberDatabase(ClubberDatabase.DEFAULT_FILE);
         } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            databaseError(e);
+            return;
         }
+        clubbers = database;
 
-        // removal of empty entities
-        ClubAbstractEntity toRemove;
-        while (true) {
-            toRemove = find("");
-            if (toRemove != null)
-                clubbers.remove(toRemove);
-            else
-                break;
-        }
+        ClubberProgressDialog progress = new ClubberProgressDialog(this, "Loading clubbers...",
+                "Quit without loading the clubbers");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                database.load(progress);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                progress.finish();
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException)
+                        System.exit(0);
+                    databaseError(e.getCause() != null ? e.getCause() : e);
+                    return;
+                }
+                if (exiting)
+                    return;
+
+                database.startCompaction();
+                openCheckIns();
+                for (JButton button : databaseButtons) {
+                    button.setEnabled(true);
+                }
+                if (database.isCreated()) {
+                    JOptionPane.showMessageDialog(NightClubMgmtApp.this,
+                            "Database file not found.\nA new file will be created.", "Database file not found",
+                            JOptionPane.INFORMATION_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Tells the user the database can't be read and stops the program.
+     */
+    private void databaseError(Throwable e) {
+        e.printStackTrace();
+        JOptionPane.showMessageDialog(this, "Can't read the database: " + e.getMessage(), "Database Error",
+                JOptionPane.ERROR_MESSAGE);
+        System.exit(1);
     }
 
     /**
-     * Function to write the clubbers information ,from the ArrayList, to a file
-     * named "BKCustomers.dat", by utilizing {@link java.io.ObjectOutputStream} and
-     * {@link java.io.FileOutputStream} classes.
+     * Opens the {@link CheckInLog} of this terminal, which finds the clubbers
+     * inside tonight in the database.
      */
-    private void writeClubbersDBtoFile() {
+    private void openCheckIns() {
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(("BKCustomers.dat")));
-            oos.writeObject(clubbers);
-            oos.flush();
-            oos.close();
-        } catch (FileNotFoundException e) {
+            checkIns = new CheckInLog(clubbers, Paths.get(""));
+        } catch (IOException e) {
             e.printStackTrace();
+        }
+        updateOccupancy();
+    }
+
+    /**
+     * Function to write the clubbers information, from the database, to a file
+     * named "BKCustomers.dat" by closing the {@link ClubberDatabase}. Empty
+     * entities, which were created by closing the main window after pressing the
+     * "Add" button and before saving anything, are never written to the file. If
+     * the write is cancelled the changes stay in the journal, and are written on
+     * the next startup.
+     * 
+     * @param progress told while the file is written
+     */
+    private static void writeClubbersDBtoFile(ClubberProgress progress) {
+        try {
+            database.close(progress);
+        } catch (CancellationException e) {
+            System.out.println("Writing the database was cancelled, the journal is kept");
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Closes the program, with the DB file written on a background thread while
+     * a {@link ClubberProgressDialog} shows how far it got.
+     */
+    private void exit() {
+        if (exiting)
+            return;
+        exiting = true;
+        setEnabled(false);
+
+        ClubberProgressDialog progress = new ClubberProgressDialog(this, "Saving clubbers...",
+                "Quit now, the changes are kept in the journal and written on the next start");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                shutdown(progress);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                progress.finish();
+                System.exit(0);
+            }
+        }.execute();
+    }
+
+    /**
+     * Stops the program's background work before it exits: the check-ins are
+     * flushed, a client disconnects from its server, otherwise the DB file is
+     * written. The metrics of the run are dumped last.
+     * 
+     * @param progress told while the DB file is written
+     */
+    private static void shutdown(ClubberProgress progress) {
+        if (checkIns != null) {
+            try {
+                checkIns.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (database != null) {
+            writeClubbersDBtoFile(progress);
+        }
+        ClubberMetrics.stop(ClubberMetrics.DEFAULT_DUMP_FILE);
+    }
+
     /**
      * Main function. Creates an instance of NightClubMgmtApp to initialize and run
-     * the program.
+     * the program, or runs it as a server or as a client of one.
      * 
-     * @param args .
+     * @param args nothing, {@code --server [port]} or {@code --connect host[:port]}
      */
     public static void main(String[] args) {
+        if (args.length >= 1 && args[0].equals("--server")) {
+            String[] serve = Arrays.copyOf(args, args.length);
+            serve[0] = "serve";
+            ClubberCli.main(serve);
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--connect")) {
+            try {
+                client = ClubberClient.connect(args[1]);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "Can't connect to " + args[1] + ": " + e.getMessage(),
+                        "Server Not Available", JOptionPane.ERROR_MESSAGE);
+                e.printStackTrace();
+                return;
+            }
+        }
         NightClubMgmtApp application = new NightClubMgmtApp();
     }
 }
@@ -1,124 +1,249 @@
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
+import javax.swing.event.*;
 
 /**
- * This class extends the abstract class {@link ClubAbstractEntity}. It holds
- * all the required identifiers for each customer as a {@link JFrame}.
+ * This class extends the abstract class {@link ClubAbstractEntity}. It is the
+ * {@link JFrame} used to edit the identifiers of a {@link ClubberRecord}. The
+ * frame is built from the record's {@link ClubberType}: a row for every
+ * identifier, checked by the identifier's validator, and a duplicate check for
+ * every key. A person's editor shows the ID, name, surname and phone number; a
+ * student's adds the student ID and a soldier's the personal number.
+ * 
+ * The identifiers are checked as they are typed. Each check makes a
+ * {@link ClubberValidation} of the typed values on a background thread, and the
+ * result is shown on the form in one go: only the asterisks whose state
+ * changed are touched. Keystrokes made while a check runs are checked
+ * together once it's done.
  */
 public class Person extends ClubAbstractEntity {
-    // the required identifiers:
-    // identifiersStrings[0] - id, identifiersStrings[1] - name
-    // identifiersStrings[2] - surname, identifiersStrings[3] - phone number.
-    protected String identifierStrings[];
+    // the type of the records the editor is built for
+    private final ClubberType type;
 
     // each identifier has a matching textfield
-    // ordered the same as the identifier strings
+    // identifiersTextFields[0] - id, identifiersTextFields[1] - name
+    // identifiersTextFields[2] - surname, identifiersTextFields[3] - phone number,
+    // then the identifiers of the type, such as the student ID.
     protected JTextField identifiersTextFields[];
 
     // each identifier has a JLabel to hold the asterisk for an error.
     protected JLabel[] asterisks;
+    // marked[i] - true while asterisks[i] is shown
+    private boolean[] marked;
+
+    // true while a check runs in the background
+    private boolean checking;
+    // true if the textfields changed while the check ran
+    private boolean recheck;
+    // true while rollBack fills the textfields, which needs no check
+    private boolean filling;
 
     /**
-     * This constructor receives 4 (all) parameters required to create a new person.
-     * In addition, it adds the fields to their respected locations in the frame by
-     * using the {@link ClubAbstractEntity#addToCenter} method. By using the
-     * following methods: {@link ClubAbstractEntity#createAsterisk},
+     * Creates the editor of a person.
+     */
+    public Person() {
+        this(ClubberType.PERSON);
+    }
+
+    /**
+     * This constructor creates the editor of a type. It adds a row for each
+     * identifier of the type to the frame by using the
+     * {@link ClubAbstractEntity#addToCenter} method. By using the following
+     * methods: {@link ClubAbstractEntity#createAsterisk},
      * {@link ClubAbstractEntity#createRow},
      * {@link ClubAbstractEntity#createTextField} we get a generic implementation
-     * for a person.
+     * for every type. The textfields are filled once a record is bound using
+     * {@link ClubAbstractEntity#bind}.
      * 
-     * @param id      The person's ID.
-     * @param name    The person's name.
-     * @param surname The person's surname.
-     * @param tel     The person's phone number.
+     * @param type the type of the records to edit
      */
-    public Person(String id, String name, String surname, String tel) {
-        // window settings
-        this.setTitle("Person");
-        this.setSize(450, 220);
+    public Person(ClubberType type) {
+        this.type = type;
+
+        // window settings, each row takes 30 pixels
+        this.setTitle(type.getName());
+        this.setSize(450, 100 + 30 * type.getFieldCount());
         setLocationRelativeTo(null);
 
         // fields initialization
-        identifierStrings = new String[] { id, name, surname, tel };
-        identifiersTextFields = new JTextField[identifierStrings.length];
-        String[] labels = { "ID", "Name", "Surname", "Tel" };
-        asterisks = new JLabel[identifierStrings.length];
+        identifiersTextFields = new JTextField[type.getFieldCount()];
+        asterisks = new JLabel[type.getFieldCount()];
+        marked = new boolean[type.getFieldCount()];
+
+        // check the identifiers as they are typed
+        DocumentListener typed = new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                validateLater();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                validateLater();
+            }
 
-        for (int i = 0; i < identifierStrings.length; i++) {
+            public void changedUpdate(DocumentEvent e) {
+                validateLater();
+            }
+        };
 
-            identifiersTextFields[i] = createTextField(identifierStrings[i]);
+        for (int i = 0; i < identifiersTextFields.length; i++) {
+
+            identifiersTextFields[i] = createTextField("");
+            identifiersTextFields[i].getDocument().addDocumentListener(typed);
             asterisks[i] = createAsterisk();
 
-            addToCenter(createRow(labels[i], identifiersTextFields[i], asterisks[i]));
+            addToCenter(createRow(type.getFieldName(i), identifiersTextFields[i], asterisks[i]));
         }
     }
 
     /**
-     * Empty constructor. Invokes the 4-parameter constructor with empty strings.
-     * Used to create a new and empty entity.
+     * @return the type of the records the editor is built for.
      */
-    public Person() {
-        this("", "", "", "");
+    public ClubberType getClubberType() {
+        return type;
     }
 
     /**
-     * Checks if given key matches the person ID.
+     * This method validates every identifier by utilizing the validators of the
+     * type, and then checks that no other record holds the keys, using
+     * {@link ClubberValidation#check}.
      * 
-     * @param key ID String to be matched
-     * @return True if key matches idString, otherwise false.
+     * @param edited the typed identifiers, in a copy of the bound record
+     * @return the result of the validation
      */
     @Override
-    public boolean match(String key) {
-        return key.equals(identifierStrings[0]);
+    protected ClubberValidation validateData(ClubberRecord edited) {
+        String[] values = new String[edited.fieldCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = edited.get(i);
+        }
+        return ClubberValidation.check(type, values, key -> NightClubMgmtApp.holderOf(key, edited));
     }
 
     /**
-     * This method validates the ID, name, surname and phone number by utilizing
-     * regular expressions.
+     * Shows the result of a validation on the form, and tells the user a taken
+     * key.
      * 
      * @return true/false, according to validation.
      */
     @Override
-    protected boolean validateData() {
-        // all regex to be checked
-        String[] patterns = { "^\\d-\\d{7}\\|[1-9]$", "[A-Z][a-z]+", "([A-Z][a-z]*('|-)?)+",
-                "^\\+\\([1-9]\\d{0,2}\\)[1-9]\\d{0,2}-[1-9]\\d{6}$" };
+    protected boolean accept(ClubberValidation result) {
+        show(result);
+        if (result.isValid())
+            return true;
+
+        // a malformed identifier is only marked, a taken key is told
+        int problem = result.getProblem();
+        if (result.getState(problem) == ClubberValidation.TAKEN) {
+            String str = type.getFieldName(problem) + " " + result.getTakenKey() + " is in the database";
+            JOptionPane.showMessageDialog(this, str, "Clubber Already In Data Base",
+                    JOptionPane.INFORMATION_MESSAGE);
+        }
+        return false;
+    }
+
+    /**
+     * Checks the typed identifiers on a background thread and shows the result,
+     * unless the editor was closed or bound to another record meanwhile. Changes
+     * made while a check runs are checked once it's done, against the record
+     * the editor is bound to by then.
+     */
+    private void validateLater() {
+        if (record == null || filling)
+            return;
+        if (checking) {
+            recheck = true;
+            return;
+        }
 
-        Boolean found = true;
+        checking = true;
+        ClubberRecord edited = record;
+        String[] values = values();
+        new SwingWorker<ClubberValidation, Void>() {
+            @Override
+            protected ClubberValidation doInBackground() {
+                return ClubberValidation.check(type, values, key -> NightClubMgmtApp.holderOf(key, edited));
+            }
 
-        // check if strings match the regex
-        for (int i = 0; i < identifiersTextFields.length; i++) {
-            // hide the asterisk by default
-            asterisks[i].setText(" ");
-            // if there's no match, show asterisk and return
-            if (found && !(identifiersTextFields[i].getText().matches(patterns[i]))) {
-                found = false;
-                asterisks[i].setText("*");
+            @Override
+            protected void done() {
+                checking = false;
+                // values typed meanwhile are checked for the record bound now,
+                // which may not be the one this check was for
+                if (recheck) {
+                    recheck = false;
+                    validateLater();
+                    return;
+                }
+                if (record != edited)
+                    return;
+                try {
+                    show(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows a result on the form in a single pass, marking the identifier to
+     * fix. Only the asterisks whose state changes are touched, so only they are
+     * repainted.
+     * 
+     * @param result the result to show, or null to hide every asterisk
+     */
+    private void show(ClubberValidation result) {
+        int problem = result == null ? -1 : result.getProblem();
+        for (int i = 0; i < asterisks.length; i++) {
+            if (marked[i] != (i == problem)) {
+                marked[i] = i == problem;
+                markAsterisk(asterisks[i], marked[i]);
             }
         }
+    }
 
-        // check if ID exists within the DB
-        String insertedID = identifiersTextFields[0].getText();
-        return found && !(NightClubMgmtApp.isExist("ID", insertedID, this));
+    /**
+     * @return the text of every textfield.
+     */
+    private String[] values() {
+        String[] values = new String[identifiersTextFields.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = identifiersTextFields[i].getText();
+        }
+        return values;
     }
 
     /**
-     * After a successful validation, write the information into the database.
+     * After a successful validation, write the information into the given record.
      */
     @Override
-    protected void commit() {
-        for (int i = 0; i < identifierStrings.length; i++) {
-            identifierStrings[i] = identifiersTextFields[i].getText();
+    protected void commit(ClubberRecord target) {
+        for (int i = 0; i < identifiersTextFields.length; i++) {
+            target.set(i, identifiersTextFields[i].getText());
         }
     }
 
     /**
-     * Rolls back the previous valid values into the textfields.
+     * Rolls back the previous valid values of the bound record into the
+     * textfields, and hides the asterisks. Only textfields whose text differs
+     * are filled, and they aren't checked, as committed values were checked
+     * before.
      */
     @Override
     protected void rollBack() {
-        for (int i = 0; i < identifiersTextFields.length; i++) {
-            identifiersTextFields[i].setText(identifierStrings[i]);
-            asterisks[i].setText(" ");
+        ClubberRecord committed = record.current();
+        filling = true;
+        try {
+            for (int i = 0; i < identifiersTextFields.length; i++) {
+                String value = committed.get(i);
+                if (!value.contentEquals(textOf(identifiersTextFields[i])))
+                    identifiersTextFields[i].setText(value);
+            }
+        } finally {
+            filling = false;
         }
+        // a check of the values typed before is dropped
+        recheck = checking;
+        show(null);
     }
 }